@@ -14,6 +14,9 @@ import joueur.BaseAI;
 
 // <<-- Creer-Merge: imports -->> - Code you add between this comment and the end comment will be preserved between Creer re-runs.
 // you can add additional import(s) here
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
 // <<-- /Creer-Merge: imports -->>
 
 /**
@@ -33,8 +36,22 @@ public class AI extends BaseAI {
     // <<-- Creer-Merge: fields -->> - Code you add between this comment and the end comment will be preserved between Creer re-runs.
     // you can add additional fields here for your AI to use
     public ChessBoard chessBoard;
-    public HistoryTable historyTable;
-    public TranspositionTable transpositionTable;
+    public ChessEngine engine;  // tables and principal variation kept from turn to turn
+    public int searchThreads;  // number of threads searching each move, from the "threads" AI setting
+    public String parallelSearch;  // "smp" for Lazy SMP or "ybw" for Young Brothers Wait, from the "parallel" AI setting
+    public boolean ponderEnabled;  // whether to search on the opponent's time, from the "ponder" AI setting
+    public int futilityMargin;  // shallow-depth pruning margins in centipawns, from the "futilityMargin", "reverseFutilityMargin"
+    public int reverseFutilityMargin;  // and "razorMargin" AI settings; a negative margin disables the rule
+    public int razorMargin;
+    public int depthLimit;  // fixed search depth from the "depth" AI setting, 0 to search until the clock says stop
+    public int nodeLimit;  // nodes per search from the "nodes" AI setting, 0 for no limit
+    private OpeningBook openingBook;  // Polyglot book from the "book" AI setting, null when there is none
+    private Bitbases bitbases;  // KPK, KRK and KQK tables in the "bitbases" AI setting's directory, null when there is none
+    private SyzygyTablebase tablebase;  // Syzygy tables in the "syzygy" AI setting's directory, null when there is none
+    private NnueNetwork network;  // network in the "nnue" AI setting's weights file, null to use the positional heuristic
+    private StatisticsSink statisticsSink;  // where the "statistics" AI setting sends search statistics, null when unset
+    private Ponderer ponderer;  // searches while the opponent thinks, null when not pondering
+    private int ponderHistorySize;  // length of the game history when pondering started, before our move was added
     // <<-- /Creer-Merge: fields -->>
 
 
@@ -56,8 +73,27 @@ public class AI extends BaseAI {
         // <<-- Creer-Merge: start -->> - Code you add between this comment and the end comment will be preserved between Creer re-runs.
         super.start();
         chessBoard = new ChessBoard(game.fen);
-        historyTable = new HistoryTable();
-        transpositionTable = new TranspositionTable();
+        // the book may replace the Zobrist randoms, which must happen before the first position is keyed
+        openingBook = loadOpeningBook(getSetting("book"), getSetting("bookRandoms"));
+        engine = new ChessEngine(getIntSetting("hash", TranspositionTable.DEFAULT_MEGABYTES));  // megabytes
+        String[] fenFields = game.fen.split(" ");  // placement, side to move, castling, en passant, halfmove clock, move number
+        Color firstToMove = fenFields.length > 1 && fenFields[1].equals("b") ? Color.BLACK : Color.WHITE;
+        int halfmoveClock = fenFields.length > 4 && fenFields[4].matches("\\d+") ? Integer.parseInt(fenFields[4]) : 0;
+        engine.startGame(chessBoard, firstToMove, halfmoveClock);
+        searchThreads = getIntSetting("threads", 1);
+        parallelSearch = getSetting("parallel") == null ? "smp" : getSetting("parallel");
+        depthLimit = getIntSetting("depth", 0);
+        nodeLimit = getIntSetting("nodes", 0);
+        // a depth or node limit makes each search reproducible, which pondering (a search of variable length) would undo
+        ponderEnabled = "true".equals(getSetting("ponder")) && depthLimit <= 0 && nodeLimit <= 0;
+        futilityMargin = getIntSetting("futilityMargin", QuiescentSolver.DEFAULT_FUTILITY_MARGIN);
+        reverseFutilityMargin = getIntSetting("reverseFutilityMargin", QuiescentSolver.DEFAULT_REVERSE_FUTILITY_MARGIN);
+        razorMargin = getIntSetting("razorMargin", QuiescentSolver.DEFAULT_RAZOR_MARGIN);
+        bitbases = getSetting("bitbases") == null ? null : new Bitbases(getSetting("bitbases"));  // tables load on first use
+        tablebase = getSetting("syzygy") == null ? null : new SyzygyTablebase(getSetting("syzygy"));  // files map on first use
+        network = loadNetwork(getSetting("nnue"));
+        loadEvaluationParameters(getSetting("evaluation"));
+        statisticsSink = createStatisticsSink(getSetting("statistics"));
         // <<-- /Creer-Merge: start -->>
     }
 
@@ -68,6 +104,13 @@ public class AI extends BaseAI {
     public void gameUpdated() {
         // <<-- Creer-Merge: game-updated -->> - Code you add between this comment and the end comment will be preserved between Creer re-runs.
         super.gameUpdated();
+        if(ponderer != null && game.history.size() > ponderHistorySize + 1) {  // the opponent has replied
+            String opponentMove = game.history.get(ponderHistorySize + 1);
+            if(!ponderer.isHit(opponentMove)) {
+                ponderer.stop();  // ponder miss, free the CPU right away; the tables stay warm
+                ponderer = null;
+            }
+        }
         // <<-- /Creer-Merge: game-updated -->>
     }
 
@@ -80,6 +123,10 @@ public class AI extends BaseAI {
     public void ended(boolean won, String reason) {
         // <<-- Creer-Merge: ended -->> - Code you add between this comment and the end comment will be preserved between Creer re-runs.
         super.ended(won, reason);
+        if(ponderer != null) {
+            ponderer.stop();
+            ponderer = null;
+        }
         // <<-- /Creer-Merge: ended -->>
     }
 
@@ -100,22 +147,65 @@ public class AI extends BaseAI {
             String originalTile = latestMove.substring(0, 2);
             ChessPiece opponentPiece = chessBoard.at(originalTile);
             if(opponentPiece != null) {
+                boolean zeroing = MoveList.isZeroing(chessBoard, latestMove);
                 chessBoard.detectCaptures(latestMove);
                 chessBoard.movePiece(latestMove);
+                engine.positionReached(chessBoard, currentPlayer, zeroing);
             }
         }
 
         // mark tiles that are under attack by the opponent
         chessBoard.updateAttackedTiles(currentPlayer);
 
-        // use minimax with alpha-beta pruning, quiescent search, and history table to determine the best move
-        ChessSolver chessSolver = new QuiescentSolver(chessBoard, currentPlayer, player.timeRemaining, historyTable, transpositionTable);
-        String chosenMove = chessSolver.computeBestMove();
+        String chosenMove = openingBook == null ? null : openingBook.probe(chessBoard, currentPlayer);
+        if(chosenMove != null) {
+            engine.forgetVariation();
+            System.out.println("Book move " + chosenMove);
+        }
+
+        ArrayList<String> rootMoves = null;  // the moves that keep the tablebase result, when one covers the board
+        if(chosenMove == null && tablebase != null) {
+            rootMoves = tablebase.rankRootMoves(chessBoard, currentPlayer);
+            if(rootMoves != null && rootMoves.size() == 1) {
+                chosenMove = rootMoves.get(0);
+                engine.forgetVariation();
+                System.out.println("Tablebase move " + chosenMove);
+            }
+        }
+
+        if(ponderer != null) {  // we searched on the opponent's time
+            String opponentMove = game.history.get(game.history.size() - 1);
+            if(chosenMove == null && rootMoves == null && ponderer.isHit(opponentMove)) {  // ponder hit, the pondering search becomes this turn's search
+                chosenMove = ponderer.finish(turnTimeManager().getSoftLimit());
+                engine.forgetVariation();  // the pondering search keeps no variation for the next turn
+                System.out.println("Ponder hit on " + opponentMove);
+            } else {
+                ponderer.stop();
+            }
+            ponderer = null;
+        }
+
+        if(chosenMove == null) {
+            engine.newTurn(game.history.isEmpty() ? null : game.history.get(game.history.size() - 1));
+            chosenMove = searchBestMove(currentPlayer, rootMoves);
+        }
         System.out.println(currentPlayer + "'s move: " + chosenMove + "\n");  // print the move
 
         // update the internal board state
+        boolean zeroing = MoveList.isZeroing(chessBoard, chosenMove);
         chessBoard.detectCaptures(chosenMove);
         chessBoard.movePiece(chosenMove);
+        engine.positionReached(chessBoard, currentPlayer == Color.WHITE ? Color.BLACK : Color.WHITE, zeroing);
+
+        if(ponderEnabled) {  // think about our next move while the opponent thinks about theirs
+            ponderHistorySize = game.history.size();
+            ponderer = new Ponderer(chessBoard, currentPlayer, player.opponent.timeRemaining,
+                    engine.getHistoryTable(), engine.getTranspositionTable());
+            ponderer.setPredictedMove(engine.getExpectedReply());  // the search already expects a reply, if it found one
+            ponderer.setPositionHistory(engine.getPositionHistory());
+            ponderer.setNetwork(network);
+            ponderer.start();
+        }
 
         return chosenMove;
         // <<-- /Creer-Merge: makeMove -->>
@@ -124,5 +214,177 @@ public class AI extends BaseAI {
 
     // <<-- Creer-Merge: methods -->> - Code you add between this comment and the end comment will be preserved between Creer re-runs.
     // you can add additional methods here for your AI to call
+
+    /**
+     * Search the current board for the best move, using the parallel search chosen by the AI settings
+     * @param currentPlayer the color of this AI's player
+     * @param rootMoves the only moves to consider, or null for every legal move
+     * @return the chosen move in UCI notation
+     */
+    private String searchBestMove(Color currentPlayer, ArrayList<String> rootMoves) {
+        // use minimax with alpha-beta pruning, quiescent search, and history table to determine the best move
+        TimeManager timeManager = turnTimeManager();
+        HistoryTable historyTable = engine.getHistoryTable();
+        TranspositionTable transpositionTable = engine.getTranspositionTable();
+
+        if(searchThreads > 1 && parallelSearch.equals("ybw")) {  // siblings split across a fork/join pool
+            engine.forgetVariation();  // the fork/join search keeps no principal variation
+            YoungBrothersSolver youngBrothersSolver = new YoungBrothersSolver(chessBoard, currentPlayer, timeManager, searchThreads);
+            youngBrothersSolver.setRootMoves(rootMoves);
+            youngBrothersSolver.setPositionHistory(engine.getPositionHistory());
+            youngBrothersSolver.setDepthLimit(depthLimit);
+            youngBrothersSolver.setNodeLimit(nodeLimit);
+            return youngBrothersSolver.computeBestMove();
+        }
+
+        ChessSolver chessSolver;
+        QuiescentSolver mainSolver;  // the search that decides the move
+        if(searchThreads > 1) {  // helper threads share the transposition table with the main search (Lazy SMP)
+            LazySmpSolver lazySmpSolver = new LazySmpSolver(chessBoard, currentPlayer, timeManager, historyTable, transpositionTable, searchThreads);
+            lazySmpSolver.setPruningMargins(futilityMargin, reverseFutilityMargin, razorMargin);
+            lazySmpSolver.setBitbases(bitbases);
+            lazySmpSolver.setTablebase(tablebase);
+            lazySmpSolver.setRootMoves(rootMoves);
+            lazySmpSolver.setNetwork(network);
+            lazySmpSolver.setPositionHistory(engine.getPositionHistory());
+            chessSolver = lazySmpSolver;
+            mainSolver = lazySmpSolver.getMainSolver();
+        } else {
+            mainSolver = new QuiescentSolver(chessBoard, currentPlayer, timeManager, historyTable, transpositionTable);
+            mainSolver.setPruningMargins(futilityMargin, reverseFutilityMargin, razorMargin);
+            mainSolver.setBitbases(bitbases);
+            mainSolver.setTablebase(tablebase);
+            mainSolver.setRootMoves(rootMoves);
+            if(network != null) {
+                mainSolver.setHeuristic(new NnueHeuristic(network, currentPlayer));
+            }
+            mainSolver.setPositionHistory(engine.getPositionHistory());
+            chessSolver = mainSolver;
+        }
+
+        mainSolver.setStatisticsSink(statisticsSink);  // helpers count for themselves but report nothing
+        mainSolver.setDepthLimit(depthLimit);  // helpers still run until the main search stops
+        mainSolver.setNodeLimit(nodeLimit);
+        engine.prepare(mainSolver);  // continue last turn's principal variation if the opponent followed it
+        String move = chessSolver.computeBestMove();
+        engine.searchCompleted(mainSolver, move);
+        return move;
+    }
+
+    /**
+     * Open the opening book named by the AI settings
+     * @param path path of a Polyglot .bin book, or null for no book
+     * @param randomsPath path of Polyglot's Random64 table as published (see Zobrist.loadRandoms), which the book's
+     *                    keys are made with; without it no position would ever match, so the book is refused
+     * @return the book, or null if there is none or it cannot be read
+     */
+    private OpeningBook loadOpeningBook(String path, String randomsPath) {
+        if(path == null) {
+            return null;
+        }
+        if(randomsPath == null) {
+            System.out.println("Not using the opening book " + path + ": its keys need Polyglot's Random64 table, "
+                    + "given by the bookRandoms setting");
+            return null;
+        }
+        try {
+            Zobrist.loadRandoms(randomsPath);
+            return new OpeningBook(path);
+        } catch (IOException e) {
+            System.out.println("Could not open the opening book " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Load the evaluation network named by the AI settings
+     * @param path path of a NNUE weights file, or null for none
+     * @return the network, or null if there is none or it cannot be read
+     */
+    private NnueNetwork loadNetwork(String path) {
+        if(path == null) {
+            return null;
+        }
+        try {
+            return new NnueNetwork(path);
+        } catch (IOException e) {
+            System.out.println("Could not load the network " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Score with the evaluation parameters named by the AI settings, e.g. a file written by TexelTuner
+     * @param path path of a parameter file, or null to keep the defaults
+     */
+    private void loadEvaluationParameters(String path) {
+        if(path == null) {
+            return;
+        }
+        try {
+            EvaluationParameters.setActive(EvaluationParameters.load(path));
+        } catch (IOException e) {
+            System.out.println("Could not load the evaluation parameters " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Create the sink named by the AI settings
+     * @param target "stdout" to print the statistics, or a file to append them to, or null for none
+     * @return the sink, or null if there is none or the file cannot be opened
+     */
+    private StatisticsSink createStatisticsSink(String target) {
+        if(target == null) {
+            return null;
+        }
+        if(target.equals("stdout")) {
+            return new StatisticsSink() {
+                @Override
+                public void report(String line) {
+                    System.out.println(line);
+                }
+            };
+        }
+        try {
+            final PrintWriter writer = new PrintWriter(new FileWriter(target, true), true);  // flushed per line
+            return new StatisticsSink() {
+                @Override
+                public void report(String line) {
+                    writer.println(line);
+                }
+            };
+        } catch (IOException e) {
+            System.out.println("Could not open the statistics file " + target + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Plan this turn's time from both players' clocks and how far the game has gone
+     * @return a TimeManager for the current turn
+     */
+    private TimeManager turnTimeManager() {
+        int movesPlayed = game.history.size() / 2;  // history holds both players' moves
+        return new TimeManager(player.timeRemaining, player.opponent.timeRemaining, movesPlayed);
+    }
+
+    /**
+     * Read an integer AI setting passed through --aiSettings
+     * @param key the name of the setting
+     * @param defaultValue the value to use if the setting is missing or not a number
+     * @return the setting's integer value
+     */
+    private int getIntSetting(String key, int defaultValue) {
+        String value = getSetting(key);
+        if(value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring invalid value for AI setting " + key + ": " + value);
+            return defaultValue;
+        }
+    }
     // <<-- /Creer-Merge: methods -->>
 }
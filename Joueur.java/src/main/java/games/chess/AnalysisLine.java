@@ -0,0 +1,70 @@
+package games.chess;
+
+import java.util.ArrayList;
+
+/**
+ * One line of a multi-PV analysis: a root move, its value and the principal variation that supports it
+ */
+public class AnalysisLine {
+
+    private final String move;
+    private final int value;  // for the player to move at the root
+    private final ArrayList<String> variation;  // starting with move
+    private final int depth;  // depth limit the line was searched to
+
+    /**
+     * Constructor for an AnalysisLine
+     * @param move the root move in UCI notation
+     * @param value the move's value for the player to move
+     * @param variation the expected line in UCI notation, starting with the move; it is copied
+     * @param depth the depth limit the line was searched to
+     */
+    public AnalysisLine(String move, int value, ArrayList<String> variation, int depth) {
+        this.move = move;
+        this.value = value;
+        this.variation = new ArrayList<>(variation);
+        this.depth = depth;
+    }
+
+    /**
+     * Getter for the root move
+     * @return the move in UCI notation
+     */
+    public String getMove() {
+        return move;
+    }
+
+    /**
+     * Getter for the move's value
+     * @return the value for the player to move at the root
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Getter for the principal variation
+     * @return moves in UCI notation, starting with the root move
+     */
+    public ArrayList<String> getVariation() {
+        return new ArrayList<>(variation);
+    }
+
+    /**
+     * Getter for the depth limit the line was searched to
+     * @return the depth limit
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder("depth " + depth + " value " + value + " pv");
+        for(String pvMove : variation) {
+            line.append(' ').append(pvMove);
+        }
+        return line.toString();
+    }
+
+}
@@ -0,0 +1,373 @@
+package games.chess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Win/draw table for an endgame of king and one piece against a lone king (KPK, KRK or KQK), one bit per position.
+ * The side with the piece is normalized to white, so a position is indexed by the side to move, both kings' tiles
+ * and the piece's tile, with tiles numbered 0-63 from a1 to h8.
+ *
+ * Tables are generated by retrograde analysis: positions that are decided by the rules (mate, stalemate, the lone
+ * king taking the piece, an unstoppable promotion) are classified first, then passes over the whole table mark a
+ * position won once white has a move to a won position or black has only moves to won positions, until a pass
+ * changes nothing. Every remaining position is a draw. Passes are split across threads, each reading the previous
+ * pass and writing its own range of the next
+ */
+public class Bitbase {
+
+    public static final char PAWN = 'P';
+    public static final char ROOK = 'R';
+    public static final char QUEEN = 'Q';
+
+    static final int SIZE = 2 * 64 * 64 * 64;  // side to move x white king x black king x piece
+
+    private static final byte UNKNOWN = 0;
+    private static final byte WIN = 1;
+    private static final byte DRAW = 2;
+    private static final byte INVALID = 3;
+
+    private static final int[][] KING_STEPS = {{1, -1}, {1, 0}, {1, 1}, {0, -1}, {0, 1}, {-1, -1}, {-1, 0}, {-1, 1}};
+    private static final int[][] ROOK_DIRECTIONS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+    private static final int[][] QUEEN_DIRECTIONS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+    private final char piece;
+    private final long[] wins;  // bit set where white wins
+
+    /**
+     * Constructor for a Bitbase from its packed bits
+     * @param piece PAWN, ROOK or QUEEN
+     * @param wins SIZE bits, set for won positions
+     */
+    private Bitbase(char piece, long[] wins) {
+        this.piece = piece;
+        this.wins = wins;
+    }
+
+    /**
+     * Compute the index of a position
+     * @param whiteToMove true if the side with the piece is to move
+     * @param whiteKing tile of the king with the piece, 0-63
+     * @param blackKing tile of the lone king, 0-63
+     * @param pieceTile tile of the piece, 0-63
+     * @return index into the table
+     */
+    static int index(boolean whiteToMove, int whiteKing, int blackKing, int pieceTile) {
+        return (((whiteToMove ? 0 : 1) * 64 + whiteKing) * 64 + blackKing) * 64 + pieceTile;
+    }
+
+    /**
+     * Look up whether the side with the piece wins
+     * @param whiteToMove true if the side with the piece is to move
+     * @param whiteKing tile of the king with the piece, 0-63
+     * @param blackKing tile of the lone king, 0-63
+     * @param pieceTile tile of the piece, 0-63
+     * @return true if the position is won, false if it is drawn or cannot occur
+     */
+    public boolean isWin(boolean whiteToMove, int whiteKing, int blackKing, int pieceTile) {
+        int index = index(whiteToMove, whiteKing, blackKing, pieceTile);
+        return (wins[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Getter for the kind of piece this table covers
+     * @return PAWN, ROOK or QUEEN
+     */
+    public char getPiece() {
+        return piece;
+    }
+
+    /**
+     * Write the packed bits to a file
+     * @param path the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(String path) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            for(long word : wins) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    /**
+     * Read a table written by write()
+     * @param piece PAWN, ROOK or QUEEN
+     * @param path the file to read
+     * @return the table
+     * @throws IOException if the file cannot be read or is too short
+     */
+    public static Bitbase read(char piece, String path) throws IOException {
+        long[] wins = new long[SIZE / 64];
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            for(int i = 0; i < wins.length; i++) {
+                wins[i] = in.readLong();
+            }
+        }
+        return new Bitbase(piece, wins);
+    }
+
+    /**
+     * Generate a table by retrograde analysis
+     * @param piece PAWN, ROOK or QUEEN
+     * @param threadCount number of threads sharing each pass
+     * @return the table
+     */
+    public static Bitbase generate(final char piece, int threadCount) {
+        final byte[][] states = {new byte[SIZE], new byte[SIZE]};  // the previous and the next pass
+        for(int index = 0; index < SIZE; index++) {
+            states[0][index] = classify(piece, index);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threadCount));
+        try {
+            int chunk = (SIZE + threadCount - 1) / threadCount;
+            int pass = 0;
+            boolean changed = true;
+            while(changed) {
+                final byte[] previous = states[pass % 2];
+                final byte[] next = states[(pass + 1) % 2];
+                List<Callable<Boolean>> ranges = new ArrayList<>();
+                for(int start = 0; start < SIZE; start += chunk) {
+                    final int from = start;
+                    final int to = Math.min(SIZE, start + chunk);
+                    ranges.add(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return iterate(piece, previous, next, from, to);
+                        }
+                    });
+                }
+                changed = false;
+                for(Future<Boolean> result : pool.invokeAll(ranges)) {
+                    changed |= result.get();
+                }
+                pass++;
+            }
+
+            long[] wins = new long[SIZE / 64];
+            byte[] result = states[pass % 2];
+            for(int index = 0; index < SIZE; index++) {
+                if(result[index] == WIN) {
+                    wins[index >>> 6] |= 1L << index;
+                }
+            }
+            return new Bitbase(piece, wins);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("bitbase generation failed", e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Run one pass of retrograde analysis over a range of positions
+     * @param piece PAWN, ROOK or QUEEN
+     * @param previous states after the last pass, only read
+     * @param next states for this pass, only written within the range
+     * @param from first index of the range
+     * @param to index after the range
+     * @return true if any position in the range was newly found to be won
+     */
+    private static boolean iterate(char piece, byte[] previous, byte[] next, int from, int to) {
+        boolean changed = false;
+        for(int index = from; index < to; index++) {
+            byte state = previous[index];
+            if(state == UNKNOWN) {
+                boolean whiteToMove = index < SIZE / 2;
+                int whiteKing = (index >> 12) & 63;
+                int blackKing = (index >> 6) & 63;
+                int pieceTile = index & 63;
+                if(whiteToMove ? whiteCanWin(piece, previous, whiteKing, blackKing, pieceTile)
+                        : blackMustLose(piece, previous, whiteKing, blackKing, pieceTile)) {
+                    state = WIN;
+                    changed = true;
+                }
+            }
+            next[index] = state;
+        }
+        return changed;
+    }
+
+    /**
+     * Classify the positions that the rules decide, leaving the rest UNKNOWN
+     * @param piece PAWN, ROOK or QUEEN
+     * @param index the position's index
+     * @return the position's initial state
+     */
+    private static byte classify(char piece, int index) {
+        boolean whiteToMove = index < SIZE / 2;
+        int whiteKing = (index >> 12) & 63;
+        int blackKing = (index >> 6) & 63;
+        int pieceTile = index & 63;
+
+        if(whiteKing == blackKing || whiteKing == pieceTile || blackKing == pieceTile || distance(whiteKing, blackKing) <= 1) {
+            return INVALID;
+        }
+        if(piece == PAWN && (pieceTile / 8 == 0 || pieceTile / 8 == 7)) {
+            return INVALID;
+        }
+        boolean blackInCheck = attacks(piece, pieceTile, blackKing, whiteKing);
+        if(whiteToMove && blackInCheck) {
+            return INVALID;  // black cannot have left its king in check
+        }
+
+        if(whiteToMove) {
+            int promotionTile = pieceTile + 8;
+            if(piece == PAWN && pieceTile / 8 == 6 && whiteKing != promotionTile && blackKing != promotionTile
+                    && (distance(blackKing, promotionTile) > 1 || distance(whiteKing, promotionTile) == 1)) {
+                return WIN;  // the pawn promotes and the new queen cannot be taken
+            }
+            return UNKNOWN;
+        }
+
+        boolean hasMove = false;
+        for(int target : blackKingMoves(piece, whiteKing, blackKing, pieceTile)) {
+            if(target == pieceTile) {
+                return DRAW;  // the lone king takes the undefended piece
+            }
+            hasMove = true;
+        }
+        if(!hasMove) {
+            return blackInCheck ? WIN : DRAW;  // checkmate or stalemate
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Determine whether white has a move to a position already known to be won
+     */
+    private static boolean whiteCanWin(char piece, byte[] states, int whiteKing, int blackKing, int pieceTile) {
+        for(int[] step : KING_STEPS) {
+            int target = step(whiteKing, step);
+            if(target >= 0 && target != pieceTile && distance(target, blackKing) > 1
+                    && states[index(false, target, blackKing, pieceTile)] == WIN) {
+                return true;
+            }
+        }
+        for(int target : pieceMoves(piece, whiteKing, blackKing, pieceTile)) {
+            if(states[index(false, whiteKing, blackKing, target)] == WIN) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determine whether every black move leads to a position already known to be won for white.
+     * Positions where black can take the piece or has no moves were decided by classify()
+     */
+    private static boolean blackMustLose(char piece, byte[] states, int whiteKing, int blackKing, int pieceTile) {
+        for(int target : blackKingMoves(piece, whiteKing, blackKing, pieceTile)) {
+            if(states[index(true, whiteKing, target, pieceTile)] != WIN) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the tiles the lone king can move to, including the piece's tile if it is undefended
+     * @return the legal destination tiles
+     */
+    static ArrayList<Integer> blackKingMoves(char piece, int whiteKing, int blackKing, int pieceTile) {
+        ArrayList<Integer> targets = new ArrayList<>();
+        for(int[] step : KING_STEPS) {
+            int target = step(blackKing, step);
+            if(target < 0 || distance(target, whiteKing) <= 1) {
+                continue;
+            }
+            if(target == pieceTile || !attacks(piece, pieceTile, target, whiteKing)) {
+                targets.add(target);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Find the tiles the piece can move to; pawn moves onto the last row are covered by classify()
+     * @return the destination tiles
+     */
+    private static ArrayList<Integer> pieceMoves(char piece, int whiteKing, int blackKing, int pieceTile) {
+        ArrayList<Integer> targets = new ArrayList<>();
+        if(piece == PAWN) {
+            int push = pieceTile + 8;
+            if(push / 8 < 7 && push != whiteKing && push != blackKing) {
+                targets.add(push);
+                int doublePush = push + 8;
+                if(pieceTile / 8 == 1 && doublePush != whiteKing && doublePush != blackKing) {
+                    targets.add(doublePush);
+                }
+            }
+            return targets;
+        }
+        for(int[] direction : piece == ROOK ? ROOK_DIRECTIONS : QUEEN_DIRECTIONS) {
+            int target = step(pieceTile, direction);
+            while(target >= 0 && target != whiteKing && target != blackKing) {
+                targets.add(target);
+                target = step(target, direction);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Determine whether the piece attacks a tile, with the white king as the only possible blocker
+     * @param piece PAWN, ROOK or QUEEN
+     * @param pieceTile tile of the piece
+     * @param target the tile
+     * @param whiteKing tile of the white king
+     * @return true if the tile is attacked
+     */
+    static boolean attacks(char piece, int pieceTile, int target, int whiteKing) {
+        int rowDelta = target / 8 - pieceTile / 8;
+        int colDelta = target % 8 - pieceTile % 8;
+        if(piece == PAWN) {
+            return rowDelta == 1 && Math.abs(colDelta) == 1;
+        }
+        boolean straight = rowDelta == 0 || colDelta == 0;
+        boolean diagonal = Math.abs(rowDelta) == Math.abs(colDelta);
+        if(target == pieceTile || !(straight || (piece == QUEEN && diagonal))) {
+            return false;
+        }
+        int[] direction = {Integer.signum(rowDelta), Integer.signum(colDelta)};
+        for(int tile = step(pieceTile, direction); tile != target; tile = step(tile, direction)) {
+            if(tile == whiteKing) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Move one step from a tile
+     * @param tile the tile, 0-63
+     * @param step row and column offsets
+     * @return the new tile, or -1 if it is off the board
+     */
+    private static int step(int tile, int[] step) {
+        int row = tile / 8 + step[0];
+        int col = tile % 8 + step[1];
+        return row < 0 || row > 7 || col < 0 || col > 7 ? -1 : row * 8 + col;
+    }
+
+    /**
+     * Number of king moves between two tiles
+     */
+    static int distance(int a, int b) {
+        return Math.max(Math.abs(a / 8 - b / 8), Math.abs(a % 8 - b % 8));
+    }
+
+}
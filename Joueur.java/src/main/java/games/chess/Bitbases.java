@@ -0,0 +1,144 @@
+package games.chess;
+
+import games.chess.pieces.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * The KPK, KRK and KQK bitbases kept in one directory. Each table is loaded the first time a position needs it,
+ * and generated (then written to the directory) if its file does not exist yet.
+ *
+ * Probes turn the win/draw bit into a score: a draw is 0, and a win is worth more than any material count, plus
+ * bonuses that lead the search toward the mate (more material, the lone king near the edge, the kings close
+ * together, the pawn further up). King and minor piece against king is always a draw.
+ *
+ * Usage: java -cp target/classes games.chess.Bitbases [directory] generates all tables ahead of time
+ */
+public class Bitbases {
+
+    public static final int NO_RESULT = Integer.MIN_VALUE;  // the position is not covered by any table
+    public static final int KNOWN_WIN = 100000;  // above any score from material alone
+    private static final int MATE_BONUS = 50000;
+
+    private static final char[] PIECES = {Bitbase.PAWN, Bitbase.ROOK, Bitbase.QUEEN};
+
+    private String directory;
+    private Bitbase[] tables = new Bitbase[PIECES.length];  // null until first needed
+
+    /**
+     * Constructor for Bitbases stored in a directory; nothing is read until the first probe
+     * @param directory the directory holding kpk.bin, krk.bin and kqk.bin
+     */
+    public Bitbases(String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Generate every table into a directory
+     * @param args optional directory, default "bitbases"
+     * @throws IOException if a table cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Bitbases bitbases = new Bitbases(args.length > 0 ? args[0] : "bitbases");
+        for(char piece : PIECES) {
+            long start = System.nanoTime();
+            bitbases.table(piece);
+            System.out.println("K" + piece + "K ready in " + (System.nanoTime() - start) / 1000000 + "ms");
+        }
+    }
+
+    /**
+     * Score a board with exactly three pieces from the tables
+     * @param chessBoard the board
+     * @param sideToMove the color of the player to move
+     * @param perspective the color whose point of view the score takes
+     * @return the score, positive if perspective wins, or NO_RESULT if the board is not a covered endgame
+     */
+    public int probe(ChessBoard chessBoard, Color sideToMove, Color perspective) {
+        ArrayList<ChessPiece> whitePieces = chessBoard.getWhitePieces();
+        ArrayList<ChessPiece> blackPieces = chessBoard.getBlackPieces();
+        if(whitePieces.size() + blackPieces.size() != 3) {
+            return NO_RESULT;
+        }
+
+        Color strong = whitePieces.size() == 2 ? Color.WHITE : Color.BLACK;
+        ArrayList<ChessPiece> strongPieces = strong == Color.WHITE ? whitePieces : blackPieces;
+        ChessPiece piece = strongPieces.get(0) instanceof King ? strongPieces.get(1) : strongPieces.get(0);
+        if(piece instanceof Knight || piece instanceof Bishop) {
+            return 0;  // a minor piece cannot mate
+        }
+        char kind = piece instanceof Pawn ? Bitbase.PAWN : piece instanceof Rook ? Bitbase.ROOK : Bitbase.QUEEN;
+
+        // the side with the piece plays white in the tables, so mirror the rows when it is black
+        int flip = strong == Color.WHITE ? 0 : 56;
+        int strongKing = tile(strong == Color.WHITE ? chessBoard.getWhiteKingPosition() : chessBoard.getBlackKingPosition(), chessBoard) ^ flip;
+        int weakKing = tile(strong == Color.WHITE ? chessBoard.getBlackKingPosition() : chessBoard.getWhiteKingPosition(), chessBoard) ^ flip;
+        int pieceTile = ((piece.rowPosition - 1) * 8 + (piece.colPosition - 'a')) ^ flip;
+        boolean strongToMove = sideToMove == strong;
+
+        int score = 0;
+        if(table(kind).isWin(strongToMove, strongKing, weakKing, pieceTile)) {
+            score = KNOWN_WIN + progress(kind, piece, strongToMove, strongKing, weakKing, pieceTile);
+        }
+        return perspective == strong ? score : -score;
+    }
+
+    /**
+     * Bonus within a won position for being closer to mate
+     */
+    private int progress(char kind, ChessPiece piece, boolean strongToMove, int strongKing, int weakKing, int pieceTile) {
+        if(!strongToMove && Bitbase.blackKingMoves(kind, strongKing, weakKing, pieceTile).isEmpty()) {
+            return MATE_BONUS;  // won with no moves for the lone king: checkmate
+        }
+        int edge = Math.max(3 - weakKing / 8, weakKing / 8 - 4) + Math.max(3 - weakKing % 8, weakKing % 8 - 4);
+        int kingDistance = Bitbase.distance(strongKing, weakKing);
+        int advance = kind == Bitbase.PAWN ? pieceTile / 8 : 0;
+        return 1000 * piece.getValue() + 100 * edge + 50 * (7 - kingDistance) + 100 * advance;
+    }
+
+    /**
+     * Load a table, generating and saving it if it is not in the directory yet
+     * @param piece PAWN, ROOK or QUEEN
+     * @return the table
+     */
+    private Bitbase table(char piece) {
+        int slot = new String(PIECES).indexOf(piece);
+        Bitbase table = tables[slot];  // Bitbase is immutable, so an unsynchronized read sees it whole
+        return table != null ? table : load(slot);
+    }
+
+    /**
+     * Read a table from the directory, or generate and save it
+     * @param slot the table's position in PIECES
+     * @return the table
+     */
+    private synchronized Bitbase load(int slot) {
+        if(tables[slot] != null) {
+            return tables[slot];  // loaded by another thread meanwhile
+        }
+        char piece = PIECES[slot];
+        String path = new File(directory, "k" + Character.toLowerCase(piece) + "k.bin").getPath();
+        try {
+            tables[slot] = Bitbase.read(piece, path);
+        } catch (IOException e) {
+            tables[slot] = Bitbase.generate(piece, Runtime.getRuntime().availableProcessors());
+            try {
+                new File(directory).mkdirs();
+                tables[slot].write(path);
+            } catch (IOException writeError) {
+                System.out.println("Could not save the bitbase " + path + ": " + writeError.getMessage());
+            }
+        }
+        return tables[slot];
+    }
+
+    /**
+     * Convert a tile in UCI notation to 0-63
+     */
+    private int tile(String boardTile, ChessBoard chessBoard) {
+        return (chessBoard.getRow(boardTile) - 1) * 8 + (chessBoard.getCol(boardTile) - 'a');
+    }
+
+}
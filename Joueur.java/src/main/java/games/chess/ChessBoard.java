@@ -42,23 +42,9 @@ public class ChessBoard {
                 char pieceSymbol = row.charAt(i);
                 if(Character.isDigit(pieceSymbol)) {  // numbers in fen skip over tiles by its amount
                     int emptySpaces = Character.getNumericValue(pieceSymbol);
-                    colPosition += emptySpaces - 1;
+                    colPosition += emptySpaces;
                 } else {
-                    ChessPiece chessPiece = getPieceFromFEN(pieceSymbol, rowPosition, colPosition);
-                    this.set(rowPosition, colPosition, chessPiece);  // put the new piece at this position
-                    if(chessPiece.getColor() == Color.WHITE) {
-                        whitePieces.add(chessPiece);  // keep internal list of all white pieces
-                        if(chessPiece instanceof King) {
-                            whiteKingPosition = "" + colPosition + rowPosition;  // track the king position
-                        }
-                    } else if(chessPiece.getColor() == Color.BLACK) {
-                        blackPieces.add(chessPiece);  // keep internal list of all black pieces
-                        if(chessPiece instanceof King) {
-                            blackKingPosition = "" + colPosition + rowPosition;  // track the king position
-                        }
-                    }
-                    String tile = "" + colPosition + rowPosition;
-                    attackedTiles.put(tile, false);
+                    place(pieceSymbol, rowPosition, colPosition);
                     colPosition++;
                 }
             }
@@ -66,6 +52,48 @@ public class ChessBoard {
         }
     }
 
+    /**
+     * Constructor for a ChessBoard from pieces stored without a FEN string, e.g. by a tuner that keeps many
+     * positions in memory. Each piece takes two bytes: its tile, numbered (row - 1) * 8 + column, then its FEN symbol
+     * @param pieces the stored pieces of one or more positions
+     * @param from index of the first byte of this position's pieces
+     * @param to index after the last byte of this position's pieces
+     */
+    public ChessBoard(byte[] pieces, int from, int to) {
+        board = new ChessPiece[8][8];
+        whitePieces = new ArrayList<>();
+        blackPieces = new ArrayList<>();
+        attackedTiles = new HashMap<>();
+        for(int i = from; i < to; i += 2) {
+            int tile = pieces[i];
+            place((char)pieces[i + 1], tile / 8 + 1, (char)('a' + tile % 8));
+        }
+    }
+
+    /**
+     * Put a new piece on an empty tile, adding it to its color's list and tracking the king positions
+     * @param pieceSymbol the piece's FEN symbol
+     * @param rowPosition the row, between 1 and 8 (inclusive)
+     * @param colPosition the column, between a and h (inclusive)
+     */
+    private void place(char pieceSymbol, int rowPosition, char colPosition) {
+        ChessPiece chessPiece = getPieceFromFEN(pieceSymbol, rowPosition, colPosition);
+        this.set(rowPosition, colPosition, chessPiece);  // put the new piece at this position
+        if(chessPiece.getColor() == Color.WHITE) {
+            whitePieces.add(chessPiece);  // keep internal list of all white pieces
+            if(chessPiece instanceof King) {
+                whiteKingPosition = "" + colPosition + rowPosition;  // track the king position
+            }
+        } else if(chessPiece.getColor() == Color.BLACK) {
+            blackPieces.add(chessPiece);  // keep internal list of all black pieces
+            if(chessPiece instanceof King) {
+                blackKingPosition = "" + colPosition + rowPosition;  // track the king position
+            }
+        }
+        String tile = "" + colPosition + rowPosition;
+        attackedTiles.put(tile, false);
+    }
+
     /**
      * Copy constructor for a ChessBoard, performs a deep copy of all member variables
      * @param chessBoard the ChessBoard to copy
@@ -0,0 +1,136 @@
+package games.chess;
+
+import java.util.ArrayList;
+
+/**
+ * Search state that lives for the whole game: the history and transposition tables, and the principal variation
+ * of the previous turn. When the opponent plays the reply that variation expected, the rest of it is searched
+ * first and iterative deepening resumes close to the depth the previous turn reached, since the transposition
+ * table already holds most of the work for the shallower depths
+ */
+public class ChessEngine {
+
+    private static final int PLIES_PER_TURN = 2;  // our move and the opponent's reply
+
+    private HistoryTable historyTable;
+    private TranspositionTable transpositionTable;
+    private ArrayList<String> principalVariation = new ArrayList<>();  // line from the previous search, starting with our move
+    private int completedDepth;  // depth limit the previous search completed
+    private boolean predictionHit;  // whether the opponent played the reply the previous search expected
+    private KeyStack positionHistory;  // keys of every position of the game, for repetition and fifty-move draws
+
+    /**
+     * Constructor for a ChessEngine with empty tables, made once at the start of the game
+     */
+    public ChessEngine() {
+        this(TranspositionTable.DEFAULT_MEGABYTES);
+    }
+
+    /**
+     * Constructor for a ChessEngine with empty tables, made once at the start of the game
+     * @param hashMegabytes memory for the transposition table
+     */
+    public ChessEngine(int hashMegabytes) {
+        historyTable = new HistoryTable();
+        transpositionTable = new TranspositionTable(hashMegabytes);
+        positionHistory = new KeyStack();
+    }
+
+    /**
+     * Record the position the game starts from
+     * @param chessBoard the starting board
+     * @param sideToMove the color of the player to move first
+     * @param halfmoveClock plies since the last capture or pawn move, from the FEN
+     */
+    public void startGame(ChessBoard chessBoard, Color sideToMove, int halfmoveClock) {
+        positionHistory.reset(Zobrist.key(chessBoard, sideToMove), halfmoveClock);
+    }
+
+    /**
+     * Record the position after a move of either player
+     * @param chessBoard the board after the move
+     * @param sideToMove the color of the player to move next
+     * @param zeroing true if the move was a capture or pawn move
+     */
+    public void positionReached(ChessBoard chessBoard, Color sideToMove, boolean zeroing) {
+        positionHistory.push(Zobrist.key(chessBoard, sideToMove), zeroing);
+    }
+
+    /**
+     * Getter for the positions of the game so far, which solvers copy before searching
+     * @return the keys of every position, ending with the current board
+     */
+    public KeyStack getPositionHistory() {
+        return positionHistory;
+    }
+
+    /**
+     * Getter for the history table shared by every search of the game
+     * @return the history table
+     */
+    public HistoryTable getHistoryTable() {
+        return historyTable;
+    }
+
+    /**
+     * Getter for the transposition table shared by every search of the game
+     * @return the transposition table
+     */
+    public TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    /**
+     * Getter for the opponent reply the previous search expected
+     * @return the reply in UCI notation, or null if the previous search found no line that long
+     */
+    public String getExpectedReply() {
+        return principalVariation.size() > 1 ? principalVariation.get(1) : null;
+    }
+
+    /**
+     * Begin a turn: age the transposition table and check whether the opponent followed the principal variation
+     * @param opponentMove the opponent's latest move in UCI notation, or null at the start of the game
+     */
+    public void newTurn(String opponentMove) {
+        transpositionTable.newSearch();
+        predictionHit = opponentMove != null && opponentMove.equals(getExpectedReply());
+    }
+
+    /**
+     * Seed a solver with the rest of the principal variation if the opponent followed it
+     * @param solver the solver about to search this turn
+     */
+    public void prepare(QuiescentSolver solver) {
+        if(!predictionHit) {
+            return;
+        }
+        solver.setPrincipalVariation(new ArrayList<>(principalVariation.subList(PLIES_PER_TURN, principalVariation.size())));
+        solver.setStartDepth(Math.max(1, completedDepth - PLIES_PER_TURN));
+        solver.setReplayHistory(false);  // the variation is a better guide than the history table
+    }
+
+    /**
+     * Keep the principal variation of a finished search for the next turn
+     * @param solver the solver that searched this turn
+     * @param move the move the solver returned, which the variation must start with
+     */
+    public void searchCompleted(QuiescentSolver solver, String move) {
+        ArrayList<String> variation = solver.getPrincipalVariation();
+        if(variation.isEmpty() || !variation.get(0).equals(move)) {
+            forgetVariation();  // the move was not the result of the last search (e.g. replayed from the history table)
+            return;
+        }
+        principalVariation = new ArrayList<>(variation);
+        completedDepth = solver.getCompletedDepth();
+    }
+
+    /**
+     * Forget the principal variation, after a turn whose move was not chosen by a search that produces one
+     */
+    public void forgetVariation() {
+        principalVariation = new ArrayList<>();
+        completedDepth = 0;
+    }
+
+}
@@ -42,6 +42,27 @@ public abstract class ChessSolver {
         return whiteCheckmated || blackCheckmated;
     }
 
+    /**
+     * Find the color that moves against the given color
+     * @param color the color of a player
+     * @return Color.BLACK for Color.WHITE, Color.WHITE for Color.BLACK
+     */
+    protected Color opponent(Color color) {
+        return color == Color.WHITE ? Color.BLACK : Color.WHITE;
+    }
+
+    /**
+     * Determines whether a player's king is attacked, looking only at the pieces on the board rather than
+     * the attacked tiles recorded for the player whose turn it is
+     * @param chessBoard the board to look at
+     * @param color the color of the king
+     * @return true if the king of that color is in check
+     */
+    protected boolean inCheck(ChessBoard chessBoard, Color color) {
+        String kingPosition = color == Color.WHITE ? chessBoard.getWhiteKingPosition() : chessBoard.getBlackKingPosition();
+        return StaticExchange.isAttacked(chessBoard, kingPosition, opponent(color));
+    }
+
     /**
      * Compute the new board that results from taking an action (moving a piece)
      * @param initialBoard the current state of the board
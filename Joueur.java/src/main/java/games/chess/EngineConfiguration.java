@@ -0,0 +1,135 @@
+package games.chess;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * One way of running the engine, for matches played in-process: the search settings of the AI, given in the same
+ * "key=value&key=value" form as --aiSettings. The settings understood are hash, threads (Lazy SMP), depth, nodes,
+ * futilityMargin, reverseFutilityMargin, razorMargin, evaluation and nnue, with the same meaning as for the AI,
+ * and replayHistory, which "false" stops the search from replaying moves from the history table as the AI does.
+ * The opening book, tablebases and pondering are left out, so a match compares the searches themselves.
+ *
+ * Unlike the AI, a configuration keeps its evaluation parameters to itself rather than making them the active
+ * ones, so two configurations with different parameter files can play each other in one process
+ */
+public class EngineConfiguration {
+
+    private String name;
+    private int hashMegabytes;
+    private int threads;
+    private int depthLimit;  // 0 to search until the clock says stop
+    private int nodeLimit;  // 0 for no limit
+    private int futilityMargin;
+    private int reverseFutilityMargin;
+    private int razorMargin;
+    private boolean replayHistory;
+    private EvaluationParameters parameters;  // null for the active ones
+    private NnueNetwork network;  // null for the positional heuristic
+
+    /**
+     * Constructor for an EngineConfiguration
+     * @param name the name results are reported under
+     * @param settings the settings in --aiSettings form, or an empty string for the defaults
+     * @throws IOException if a setting is malformed or names a file that cannot be read
+     */
+    public EngineConfiguration(String name, String settings) throws IOException {
+        this.name = name;
+        HashMap<String, String> values = new HashMap<>();
+        for(String setting : settings.split("&")) {
+            if(setting.isEmpty()) {
+                continue;
+            }
+            String[] keyValue = setting.split("=", 2);
+            values.put(keyValue[0], keyValue.length > 1 ? keyValue[1] : "");
+        }
+
+        hashMegabytes = intSetting(values, "hash", TranspositionTable.DEFAULT_MEGABYTES);
+        threads = intSetting(values, "threads", 1);
+        depthLimit = intSetting(values, "depth", 0);
+        nodeLimit = intSetting(values, "nodes", 0);
+        futilityMargin = intSetting(values, "futilityMargin", QuiescentSolver.DEFAULT_FUTILITY_MARGIN);
+        reverseFutilityMargin = intSetting(values, "reverseFutilityMargin", QuiescentSolver.DEFAULT_REVERSE_FUTILITY_MARGIN);
+        razorMargin = intSetting(values, "razorMargin", QuiescentSolver.DEFAULT_RAZOR_MARGIN);
+        replayHistory = !"false".equals(values.get("replayHistory"));
+        parameters = values.containsKey("evaluation") ? EvaluationParameters.load(values.get("evaluation")) : null;
+        network = values.containsKey("nnue") ? new NnueNetwork(values.get("nnue")) : null;
+    }
+
+    /**
+     * Getter for the configuration's name
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Create the engine state for one game, which must not be shared between games
+     * @return a ChessEngine with empty tables of the configured size
+     */
+    public ChessEngine newEngine() {
+        return new ChessEngine(hashMegabytes);
+    }
+
+    /**
+     * Search for a move the way the AI does on its turn
+     * @param engine the engine of this configuration's side of the game, with the game's positions recorded
+     * @param chessBoard the current board, with the tiles attacked by the opponent marked
+     * @param currentPlayer the color to move
+     * @param timeManager decides how long the turn may take
+     * @param opponentMove the opponent's latest move in UCI notation, or null at the start of the game
+     * @return the chosen move in UCI notation
+     */
+    public String search(ChessEngine engine, ChessBoard chessBoard, Color currentPlayer, TimeManager timeManager, String opponentMove) {
+        engine.newTurn(opponentMove);
+        ChessSolver chessSolver;
+        QuiescentSolver mainSolver;  // the search that decides the move
+        if(threads > 1) {
+            LazySmpSolver lazySmpSolver = new LazySmpSolver(chessBoard, currentPlayer, timeManager, engine.getHistoryTable(),
+                    engine.getTranspositionTable(), threads);
+            lazySmpSolver.setPruningMargins(futilityMargin, reverseFutilityMargin, razorMargin);
+            lazySmpSolver.setReplayHistory(replayHistory);
+            lazySmpSolver.setPositionHistory(engine.getPositionHistory());
+            lazySmpSolver.setNetwork(network);
+            lazySmpSolver.setEvaluationParameters(parameters);
+            chessSolver = lazySmpSolver;
+            mainSolver = lazySmpSolver.getMainSolver();
+        } else {
+            mainSolver = new QuiescentSolver(chessBoard, currentPlayer, timeManager, engine.getHistoryTable(), engine.getTranspositionTable());
+            mainSolver.setPruningMargins(futilityMargin, reverseFutilityMargin, razorMargin);
+            mainSolver.setReplayHistory(replayHistory);
+            mainSolver.setPositionHistory(engine.getPositionHistory());
+            if(network != null) {
+                mainSolver.setHeuristic(new NnueHeuristic(network, currentPlayer));
+            } else if(parameters != null) {
+                mainSolver.setHeuristic(new PositionalHeuristic(currentPlayer, parameters));
+            }
+            chessSolver = mainSolver;
+        }
+
+        mainSolver.setDepthLimit(depthLimit);
+        mainSolver.setNodeLimit(nodeLimit);
+        engine.prepare(mainSolver);
+        String move = chessSolver.computeBestMove();
+        engine.searchCompleted(mainSolver, move);
+        return move;
+    }
+
+    /**
+     * Read an integer setting
+     * @throws IOException if the value is not a number
+     */
+    private static int intSetting(HashMap<String, String> values, String key, int defaultValue) throws IOException {
+        String value = values.get(key);
+        if(value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid value for setting " + key + ": " + value);
+        }
+    }
+
+}
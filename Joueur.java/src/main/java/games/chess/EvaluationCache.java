@@ -0,0 +1,116 @@
+package games.chess;
+
+/**
+ * Heuristic that remembers the values another heuristic gave, keyed by the Zobrist key of the board, so a board
+ * that is evaluated again (at a transposition, or once for pruning and once at the cutoff) costs one lookup.
+ *
+ * The cache has a fixed number of slots, each a pair of longs, and is safe to share between threads without
+ * locks in the same way as the TranspositionTable: the first long is the key XORed with the second, so a slot
+ * read while another thread writes it does not match and counts as missing. Values are only meaningful for the
+ * player the wrapped heuristic scores for.
+ *
+ * A board's value can depend on the side to move (a NnueHeuristic's does), so keys always include it. The wrapped
+ * heuristic's h() scores a board with its player to move, so h(ChessBoard) keys the board with that player to move;
+ * a search that evaluates boards with the other side to move stores them under their own keys
+ */
+public class EvaluationCache implements Heuristic {
+
+    public static final int DEFAULT_SIZE = 1 << 16;
+
+    private static final long STORED = 1L << 32;  // set in every data word above the value, so a stored one is never 0
+
+    private Heuristic heuristic;
+    private Color player;  // the player the heuristic scores for, to move in the boards h(ChessBoard) is given
+    private long[] entries;  // key ^ data, data, ...
+    private int mask;  // size - 1
+
+    /**
+     * Constructor for an EvaluationCache of the default size
+     * @param heuristic the heuristic whose values are cached
+     * @param player the player the heuristic scores for
+     */
+    public EvaluationCache(Heuristic heuristic, Color player) {
+        this(heuristic, player, DEFAULT_SIZE);
+    }
+
+    /**
+     * Constructor for an EvaluationCache
+     * @param heuristic the heuristic whose values are cached
+     * @param player the player the heuristic scores for
+     * @param size the number of slots, rounded down to a power of two
+     */
+    public EvaluationCache(Heuristic heuristic, Color player, int size) {
+        this.heuristic = heuristic;
+        this.player = player;
+        size = Integer.highestOneBit(Math.max(1, size));
+        entries = new long[2 * size];
+        mask = size - 1;
+    }
+
+    /**
+     * Heuristic function to determine the relative value of a ChessBoard, from the cache when possible
+     * @param chessBoard the ChessBoard to find the heuristic value of, with the player to move
+     * @return the wrapped heuristic's value
+     */
+    @Override
+    public int h(ChessBoard chessBoard) {
+        return h(chessBoard, Zobrist.key(chessBoard, player));
+    }
+
+    /**
+     * Heuristic function for callers that already know the board's key, which saves computing it
+     * @param chessBoard the ChessBoard to find the heuristic value of, with the player to move
+     * @param key the Zobrist key of the board with the player to move
+     * @return the wrapped heuristic's value
+     */
+    public int h(ChessBoard chessBoard, long key) {
+        long entry = probe(key);
+        if(entry != 0) {
+            return value(entry);
+        }
+        int value = heuristic.h(chessBoard);
+        store(key, value);
+        return value;
+    }
+
+    /**
+     * Look up a board
+     * @param key a Zobrist key of the board
+     * @return the slot's data word, to read with value(), or 0 if the board is not cached
+     */
+    public long probe(long key) {
+        int slot = 2 * ((int)(key >>> 32) & mask);
+        long data = entries[slot + 1];
+        return data != 0 && (entries[slot] ^ data) == key ? data : 0;
+    }
+
+    /**
+     * Cache a board's value, replacing whatever shared its slot
+     * @param key a Zobrist key of the board
+     * @param value the wrapped heuristic's value
+     */
+    public void store(long key, int value) {
+        int slot = 2 * ((int)(key >>> 32) & mask);
+        long data = STORED | value & 0xffffffffL;
+        entries[slot] = key ^ data;
+        entries[slot + 1] = data;
+    }
+
+    /**
+     * Get the value from a data word
+     * @param entry a data word returned by probe()
+     * @return the cached value
+     */
+    public static int value(long entry) {
+        return (int)entry;
+    }
+
+    /**
+     * Getter for the heuristic whose values are cached
+     * @return the wrapped heuristic
+     */
+    public Heuristic getHeuristic() {
+        return heuristic;
+    }
+
+}
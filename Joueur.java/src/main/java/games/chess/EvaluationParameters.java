@@ -0,0 +1,151 @@
+package games.chess;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * The tunable weights of the PositionalHeuristic, in centipawns: piece values (the pawn is fixed at Heuristic.PAWN,
+ * the unit everything else is measured in) and the pawn structure and king shelter terms. The piece-square tables
+ * are not included.
+ *
+ * Parameters are read from and written to a text file of "name value" lines, where '#' starts a comment and
+ * parameters that are left out keep their defaults. The engine scores with the active parameters, which a file
+ * named by the "evaluation" AI setting replaces and TexelTuner writes
+ */
+public class EvaluationParameters {
+
+    public static final int KNIGHT = 0;
+    public static final int BISHOP = 1;
+    public static final int ROOK = 2;
+    public static final int QUEEN = 3;
+    public static final int DOUBLED = 4;  // for each pawn with another of its color in front of it on its file
+    public static final int ISOLATED = 5;  // for each pawn with no pawns of its color on the neighbouring files
+    public static final int BACKWARD = 6;  // for each pawn that lags behind its neighbours and cannot advance safely
+    public static final int PASSED = 7;  // passed pawn bonuses by rows advanced from the pawn's first row, 1-6
+    public static final int FREE_PASSER = 13;  // per row advanced, for a passed pawn whose next tile is empty
+    public static final int SHIELD_NEAR = 14;  // for each pawn right in front of a king on its first two rows
+    public static final int SHIELD_FAR = 15;  // for each pawn two rows in front of it
+
+    private static final String[] NAMES = {"knight", "bishop", "rook", "queen", "doubled", "isolated", "backward",
+            "passed1", "passed2", "passed3", "passed4", "passed5", "passed6", "freePasser", "shieldNear", "shieldFar"};
+    private static final int[] DEFAULTS = {3 * Heuristic.PAWN, 3 * Heuristic.PAWN, 5 * Heuristic.PAWN, 9 * Heuristic.PAWN,
+            15, 15, 10, 10, 15, 25, 45, 75, 120, 5, 15, 8};
+
+    private static volatile EvaluationParameters active = new EvaluationParameters();
+
+    private int[] values;
+
+    /**
+     * Constructor for EvaluationParameters with the default values
+     */
+    public EvaluationParameters() {
+        values = Arrays.copyOf(DEFAULTS, DEFAULTS.length);
+    }
+
+    /**
+     * Copy constructor for EvaluationParameters
+     * @param parameters the parameters to copy
+     */
+    public EvaluationParameters(EvaluationParameters parameters) {
+        values = Arrays.copyOf(parameters.values, parameters.values.length);
+    }
+
+    /**
+     * Read parameters from a file
+     * @param path path of the parameter file
+     * @return the parameters, with defaults for any the file leaves out
+     * @throws IOException if the file cannot be read or names an unknown parameter
+     */
+    public static EvaluationParameters load(String path) throws IOException {
+        EvaluationParameters parameters = new EvaluationParameters();
+        try(BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                String[] fields = (comment < 0 ? line : line.substring(0, comment)).trim().split("\\s+");
+                if(fields.length == 1 && fields[0].isEmpty()) {
+                    continue;
+                }
+                int index = Arrays.asList(NAMES).indexOf(fields[0]);
+                if(index < 0 || fields.length != 2 || !fields[1].matches("-?\\d+")) {
+                    throw new IOException("bad parameter line: " + line);
+                }
+                parameters.values[index] = Integer.parseInt(fields[1]);
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Write the parameters to a file, replacing it
+     * @param path path of the parameter file
+     * @param comment a line written at the top as a comment, or null for none
+     * @throws IOException if the file cannot be written
+     */
+    public void save(String path, String comment) throws IOException {
+        try(PrintWriter writer = new PrintWriter(new FileWriter(path))) {
+            if(comment != null) {
+                writer.println("# " + comment);
+            }
+            for(int i = 0; i < values.length; i++) {
+                writer.println(NAMES[i] + " " + values[i]);
+            }
+        }
+    }
+
+    /**
+     * Getter for the parameters new PositionalHeuristics score with unless given others
+     * @return the active parameters, which must not be changed
+     */
+    public static EvaluationParameters getActive() {
+        return active;
+    }
+
+    /**
+     * Replace the parameters new PositionalHeuristics score with, e.g. with tuned ones
+     * @param parameters the parameters, which must not be changed afterwards
+     */
+    public static void setActive(EvaluationParameters parameters) {
+        active = parameters;
+    }
+
+    /**
+     * Getter for a parameter
+     * @param index the parameter, e.g. KNIGHT or PASSED + 2
+     * @return its value in centipawns
+     */
+    public int get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Setter for a parameter
+     * @param index the parameter
+     * @param value its value in centipawns
+     */
+    public void set(int index, int value) {
+        values[index] = value;
+    }
+
+    /**
+     * Getter for the number of parameters
+     * @return the count
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Getter for the name of a parameter, as written in parameter files
+     * @param index the parameter
+     * @return its name
+     */
+    public static String getName(int index) {
+        return NAMES[index];
+    }
+
+}
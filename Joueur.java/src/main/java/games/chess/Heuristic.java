@@ -5,10 +5,12 @@ package games.chess;
  */
 public interface Heuristic {
 
+    int PAWN = 100;  // every heuristic scores in centipawns, hundredths of a pawn
+
     /**
      * Abstract method for subclasses to implement custom heuristic
      * @param chessBoard the ChessBoard to find the heuristic value of
-     * @return integer representing the board's heuristic value
+     * @return integer representing the board's heuristic value, in centipawns
      */
     int h(ChessBoard chessBoard);
 
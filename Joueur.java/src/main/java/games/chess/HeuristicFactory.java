@@ -0,0 +1,15 @@
+package games.chess;
+
+/**
+ * Builds a heuristic that scores with given EvaluationParameters, so a tuner can try parameter sets on any heuristic
+ */
+public interface HeuristicFactory {
+
+    /**
+     * Build a heuristic scoring for white
+     * @param parameters the parameters to score with
+     * @return a new heuristic, used by one thread only
+     */
+    Heuristic create(EvaluationParameters parameters);
+
+}
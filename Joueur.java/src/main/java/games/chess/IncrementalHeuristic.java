@@ -0,0 +1,34 @@
+package games.chess;
+
+/**
+ * Heuristic that follows a search move by move, keeping the terms of its value up to date as moves are made and
+ * taken back, so that scoring the board a line has reached does not have to look at every piece again
+ */
+public interface IncrementalHeuristic extends Heuristic {
+
+    /**
+     * Start following a search from a board
+     * @param chessBoard the board at the root
+     */
+    void reset(ChessBoard chessBoard);
+
+    /**
+     * Update the terms for a move
+     * @param chessBoard the board before the move, which must be the board reached so far
+     * @param move the move in UCI notation
+     */
+    void makeMove(ChessBoard chessBoard, String move);
+
+    /**
+     * Take back the latest move made
+     */
+    void unmakeMove();
+
+    /**
+     * Heuristic value of the board reached by the moves made since reset
+     * @param chessBoard that board, for any term not kept up to date
+     * @return heuristic value in centipawns
+     */
+    int current(ChessBoard chessBoard);
+
+}
@@ -0,0 +1,115 @@
+package games.chess;
+
+import java.util.Arrays;
+
+/**
+ * Zobrist keys of the positions reached so far, oldest first, each with its fifty-move clock. The game keeps one
+ * for the moves actually played and every search copies it and pushes and pops the positions along its current line.
+ *
+ * A position can only repeat since the last capture or pawn move, so repetitions are found by scanning back at
+ * most the fifty-move clock, and only at every other entry, where the same side is to move
+ */
+public class KeyStack {
+
+    public static final int FIFTY_MOVE_PLIES = 100;  // plies without a capture or pawn move that draw the game
+
+    private long[] keys;
+    private int[] halfmoveClocks;  // plies since the last capture or pawn move, for each position
+    private int size;
+
+    /**
+     * Constructor for an empty KeyStack
+     */
+    public KeyStack() {
+        keys = new long[64];
+        halfmoveClocks = new int[64];
+    }
+
+    /**
+     * Copy constructor for a KeyStack, so a search can push and pop without touching the game's positions
+     * @param keyStack the stack to copy
+     */
+    public KeyStack(KeyStack keyStack) {
+        keys = Arrays.copyOf(keyStack.keys, Math.max(64, keyStack.keys.length));
+        halfmoveClocks = Arrays.copyOf(keyStack.halfmoveClocks, keys.length);
+        size = keyStack.size;
+    }
+
+    /**
+     * Forget every position and start from one, e.g. the starting position of a game
+     * @param key the position's Zobrist key
+     * @param halfmoveClock plies since the last capture or pawn move, from the FEN
+     */
+    public void reset(long key, int halfmoveClock) {
+        size = 0;
+        keys[size] = key;
+        halfmoveClocks[size++] = halfmoveClock;
+    }
+
+    /**
+     * Add the position reached by a move
+     * @param key the new position's Zobrist key
+     * @param zeroing true if the move was a capture or pawn move, which resets the fifty-move clock
+     */
+    public void push(long key, boolean zeroing) {
+        if(size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            halfmoveClocks = Arrays.copyOf(halfmoveClocks, size * 2);
+        }
+        keys[size] = key;
+        halfmoveClocks[size] = zeroing || size == 0 ? 0 : halfmoveClocks[size - 1] + 1;
+        size++;
+    }
+
+    /**
+     * Remove the latest position, when the search takes its move back
+     */
+    public void pop() {
+        size--;
+    }
+
+    /**
+     * Getter for the key of the latest position
+     * @return the Zobrist key pushed last
+     */
+    public long getLatestKey() {
+        return keys[size - 1];
+    }
+
+    /**
+     * Getter for the fifty-move clock of the latest position
+     * @return plies since the last capture or pawn move
+     */
+    public int getHalfmoveClock() {
+        return size == 0 ? 0 : halfmoveClocks[size - 1];
+    }
+
+    /**
+     * Determine whether the latest position is drawn by the fifty-move rule or by repetition. A position repeated
+     * within the search is scored as a draw at once, since the side that can repeat it once can repeat it again;
+     * a position that only occurred before the search began must occur twice before, as threefold repetition requires
+     * @param searchPly plies from the root of the search to the latest position
+     * @return true if the latest position is a draw
+     */
+    public boolean isDraw(int searchPly) {
+        if(size == 0) {
+            return false;
+        }
+        int halfmoveClock = halfmoveClocks[size - 1];
+        if(halfmoveClock >= FIFTY_MOVE_PLIES) {
+            return true;
+        }
+
+        long key = keys[size - 1];
+        int earlier = 0;  // occurrences before the search
+        for(int distance = 4; distance <= halfmoveClock && distance < size; distance += 2) {  // two plies back cannot repeat
+            if(keys[size - 1 - distance] == key) {
+                if(distance <= searchPly || ++earlier == 2) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
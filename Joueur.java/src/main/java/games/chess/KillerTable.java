@@ -0,0 +1,60 @@
+package games.chess;
+
+/**
+ * Killer move table that remembers quiet moves which caused a cutoff at each depth of the game tree
+ */
+public class KillerTable {
+
+    private static final int MAX_DEPTH = 128;  // killers are not tracked beyond this depth
+    private static final int SLOTS = 2;  // number of killer moves remembered per depth
+
+    private String[][] killers;  // maps depth --> most recent killer moves, newest first
+
+    /**
+     * Constructor for KillerTable, initializes the slots for every depth
+     */
+    public KillerTable() {
+        killers = new String[MAX_DEPTH][SLOTS];
+    }
+
+    /**
+     * Record a quiet move that caused a cutoff, pushing the older killer out of its slot
+     * @param depth the depth in the game tree at which the cutoff occurred
+     * @param move the move in UCI notation
+     */
+    public void addKiller(int depth, String move) {
+        if(depth >= MAX_DEPTH || move.equals(killers[depth][0])) {
+            return;  // out of range, or already the newest killer
+        }
+        for(int slot = SLOTS - 1; slot > 0; slot--) {
+            killers[depth][slot] = killers[depth][slot - 1];
+        }
+        killers[depth][0] = move;
+    }
+
+    /**
+     * Find which slot a move occupies at a depth
+     * @param depth the depth in the game tree
+     * @param move the move in UCI notation
+     * @return 0 for the newest killer, 1 for the older killer, or -1 if the move is not a killer
+     */
+    public int getSlot(int depth, String move) {
+        if(depth >= MAX_DEPTH) {
+            return -1;
+        }
+        for(int slot = 0; slot < SLOTS; slot++) {
+            if(move.equals(killers[depth][slot])) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Forget all killer moves, used when a new search begins
+     */
+    public void clear() {
+        killers = new String[MAX_DEPTH][SLOTS];
+    }
+
+}
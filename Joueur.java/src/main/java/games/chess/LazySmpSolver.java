@@ -0,0 +1,210 @@
+package games.chess;
+
+import java.util.ArrayList;
+
+/**
+ * ChessSolver that runs Lazy SMP: helper threads repeat the same iterative deepening search as the main
+ * QuiescentSolver at staggered depths, and share its transposition table so that every thread benefits
+ * from the positions the others have already searched. Each helper keeps its own history and killer tables.
+ * Only the main search decides the move
+ */
+public class LazySmpSolver extends ChessSolver {
+
+    private TimeManager timeManager;  // decides how long the main search may take
+    private HistoryTable historyTable;  // history table of the main search, developed throughout the game
+    private TranspositionTable transpositionTable;  // transposition table shared by every thread
+    private int threadCount;  // total number of searching threads, including the main one
+    private int[] pruningMargins;  // futility, reverse futility and razor margins, or null for the defaults
+    private Bitbases bitbases;  // probed by every search thread, or null
+    private SyzygyTablebase tablebase;  // probed by every search thread, or null
+    private ArrayList<String> rootMoves;  // the only moves any thread searches at the root, or null for all
+    private KeyStack positionHistory;  // positions of the game so far, or null for none
+    private NnueNetwork network;  // evaluates for every thread, or null for the positional heuristic
+    private EvaluationParameters parameters;  // weights of the positional heuristic, or null for the active ones
+    private EvaluationCache evaluationCache;  // shared by every thread, as they all score for the same player
+    private QuiescentSolver mainSolver;
+
+    /**
+     * Constructor for LazySmpSolver
+     * @param chessBoard current state of the ChessBoard
+     * @param currentPlayer the current player's color
+     * @param timeManager decides how long the main search may take; the helpers run until it finishes
+     * @param historyTable reference to the player's history table, used by the main search
+     * @param transpositionTable transposition table shared by every search thread
+     * @param threadCount total number of searching threads, including the calling thread
+     */
+    public LazySmpSolver(ChessBoard chessBoard, Color currentPlayer, TimeManager timeManager, HistoryTable historyTable, TranspositionTable transpositionTable, int threadCount) {
+        super(chessBoard, currentPlayer);
+        this.timeManager = timeManager;
+        this.historyTable = historyTable;
+        this.transpositionTable = transpositionTable;
+        this.threadCount = Math.max(1, threadCount);
+        this.evaluationCache = new EvaluationCache(new PositionalHeuristic(currentPlayer), currentPlayer);
+        this.mainSolver = new QuiescentSolver(chessBoard, currentPlayer, timeManager, historyTable, transpositionTable);
+        mainSolver.setEvaluationCache(evaluationCache);
+    }
+
+    /**
+     * Starts the helper threads, runs the main search on the calling thread, then stops the helpers
+     * @return string in UCI notation for the move chosen by the main search
+     */
+    @Override
+    public String computeBestMove() {
+        ArrayList<QuiescentSolver> helpers = new ArrayList<>();
+        ArrayList<Thread> threads = new ArrayList<>();
+
+        for(int i = 1; i < threadCount; i++) {
+            final QuiescentSolver helper = new QuiescentSolver(new ChessBoard(chessBoard), currentPlayer, new TimeManager(TimeManager.UNLIMITED),
+                    new HistoryTable(), transpositionTable);
+            helper.setStartDepth(1 + i % 2);  // odd helpers skip ahead a depth so threads spread across iterations
+            helper.setReplayHistory(false);
+            applyPruningMargins(helper);
+            helper.setBitbases(bitbases);
+            helper.setTablebase(tablebase);
+            helper.setRootMoves(rootMoves);
+            if(network != null) {
+                helper.setHeuristic(new NnueHeuristic(network, currentPlayer));  // each thread follows its own line
+            } else if(parameters != null) {
+                helper.setHeuristic(new PositionalHeuristic(currentPlayer, parameters));
+            }
+            helper.setEvaluationCache(evaluationCache);
+            if(positionHistory != null) {
+                helper.setPositionHistory(positionHistory);  // each helper searches on its own copy
+            }
+            helpers.add(helper);
+
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    helper.computeBestMove();
+                }
+            }, "lazy-smp-helper-" + i);
+            thread.setDaemon(true);  // never keep the client alive because of a helper
+            threads.add(thread);
+            thread.start();
+        }
+
+        applyPruningMargins(mainSolver);
+        String action = mainSolver.computeBestMove();
+
+        for(QuiescentSolver helper : helpers) {
+            helper.stop();
+        }
+        for(Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        return action;
+    }
+
+    /**
+     * Set whether the main search may return an effective move from the history table without searching
+     * @param replayHistory false to always run iterative deepening
+     */
+    public void setReplayHistory(boolean replayHistory) {
+        mainSolver.setReplayHistory(replayHistory);
+    }
+
+    /**
+     * Set the margins of the shallow-depth pruning rules for every search thread
+     * @see QuiescentSolver#setPruningMargins(int, int, int)
+     */
+    public void setPruningMargins(int futilityMargin, int reverseFutilityMargin, int razorMargin) {
+        this.pruningMargins = new int[] {futilityMargin, reverseFutilityMargin, razorMargin};
+    }
+
+    /**
+     * Set the bitbases probed by every search thread
+     * @param bitbases the bitbases, or null to probe none
+     */
+    public void setBitbases(Bitbases bitbases) {
+        this.bitbases = bitbases;
+        mainSolver.setBitbases(bitbases);
+    }
+
+    /**
+     * Set the Syzygy tablebase probed by every search thread
+     * @param tablebase the tablebase, or null to probe none
+     */
+    public void setTablebase(SyzygyTablebase tablebase) {
+        this.tablebase = tablebase;
+        mainSolver.setTablebase(tablebase);
+    }
+
+    /**
+     * Evaluate with a network in every search thread instead of the positional heuristic
+     * @param network the network, or null to keep the positional heuristic
+     */
+    public void setNetwork(NnueNetwork network) {
+        this.network = network;
+        if(network != null) {
+            evaluationCache = new EvaluationCache(new NnueHeuristic(network, currentPlayer), currentPlayer);
+            mainSolver.setHeuristic(new NnueHeuristic(network, currentPlayer));
+            mainSolver.setEvaluationCache(evaluationCache);
+        }
+    }
+
+    /**
+     * Score with given weights in every search thread instead of the active EvaluationParameters. A network, if
+     * one is set, takes precedence
+     * @param parameters the weights, or null for the active ones
+     */
+    public void setEvaluationParameters(EvaluationParameters parameters) {
+        this.parameters = parameters;
+        if(parameters != null && network == null) {
+            evaluationCache = new EvaluationCache(new PositionalHeuristic(currentPlayer, parameters), currentPlayer);
+            mainSolver.setHeuristic(new PositionalHeuristic(currentPlayer, parameters));
+            mainSolver.setEvaluationCache(evaluationCache);
+        }
+    }
+
+    /**
+     * Restrict the moves every search thread considers at the root
+     * @param rootMoves legal moves in UCI notation, or null to search every legal move
+     */
+    public void setRootMoves(ArrayList<String> rootMoves) {
+        this.rootMoves = rootMoves;
+        mainSolver.setRootMoves(rootMoves);
+    }
+
+    /**
+     * Set the positions of the game so far, which every thread checks its lines against for repetitions
+     * @param positionHistory keys of the positions played, ending with the current board
+     */
+    public void setPositionHistory(KeyStack positionHistory) {
+        this.positionHistory = positionHistory;
+        mainSolver.setPositionHistory(positionHistory);
+    }
+
+    /**
+     * Hand the configured pruning margins to a search thread's solver
+     * @param solver the main or a helper solver
+     */
+    private void applyPruningMargins(QuiescentSolver solver) {
+        if(pruningMargins != null) {
+            solver.setPruningMargins(pruningMargins[0], pruningMargins[1], pruningMargins[2]);
+        }
+    }
+
+    /**
+     * Getter for the times at which each depth of the main search completed
+     * @return nanoseconds from the start of the search until each completed depth, or an empty list before searching
+     */
+    public ArrayList<Double> getIterationTimes() {
+        return mainSolver.getIterationTimes();
+    }
+
+    /**
+     * Getter for the main search, which decides the move and may be seeded or inspected like any QuiescentSolver
+     * @return the main thread's solver
+     */
+    public QuiescentSolver getMainSolver() {
+        return mainSolver;
+    }
+
+}
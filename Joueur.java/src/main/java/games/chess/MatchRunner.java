@@ -0,0 +1,345 @@
+package games.chess;
+
+import games.chess.pieces.*;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Command line match between two engine configurations, played in-process without a game server. Games run in
+ * parallel, one per thread, and each side has a simulated clock: the time a search really takes is taken off its
+ * clock, which is what the TimeManager plans with, and an increment is added after every move. Every opening of
+ * the suite is played twice, with the configurations swapping colors.
+ *
+ * Games end by checkmate, stalemate, threefold repetition, the fifty-move rule, insufficient material, a flag
+ * fall or an illegal move, or are adjudicated as draws after MAX_PLIES. After every game the runner prints the
+ * score of the first configuration, the Elo difference it implies with a 95% interval, and the log-likelihood
+ * ratio of a sequential probability ratio test (SPRT) of elo1 against elo0, using the normal approximation to the
+ * score. The match stops early as soon as the ratio leaves the bounds the error rates set.
+ *
+ * Usage: java -cp target/classes games.chess.MatchRunner openingsFile settingsA settingsB [games] [secondsPerGame]
+ * [incrementSeconds] [concurrency] [elo0] [elo1]
+ * where the settings are in --aiSettings form (e.g. "depth=5&hash=32", or "" for the defaults) and the openings
+ * file holds one FEN per line
+ */
+public class MatchRunner {
+
+    private static final int MAX_PLIES = 400;  // games still running after this many plies are drawn
+    private static final double ALPHA = 0.05;  // SPRT chance of accepting elo1 when elo0 holds
+    private static final double BETA = 0.05;  // SPRT chance of accepting elo0 when elo1 holds
+
+    private EngineConfiguration first;  // the configuration results are reported for
+    private EngineConfiguration second;
+    private ArrayList<String> openings;  // FENs
+    private double gameTime;  // nanoseconds on each clock at the start
+    private double increment;  // nanoseconds added after each move
+    private double lowerBound;  // log-likelihood ratio below which elo0 is accepted
+    private double upperBound;  // above which elo1 is accepted
+    private double scoreH0;  // expected score under elo0
+    private double scoreH1;
+    private AtomicInteger nextGame = new AtomicInteger();
+    private volatile boolean decided;  // the SPRT has stopped the match
+    private int wins;  // results of the first configuration
+    private int draws;
+    private int losses;
+
+    /**
+     * Runs a match
+     * @param args see the class comment
+     * @throws IOException if the openings or a configuration's files cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 3) {
+            System.out.println("Usage: MatchRunner openingsFile settingsA settingsB [games] [secondsPerGame]"
+                    + " [incrementSeconds] [concurrency] [elo0] [elo1]");
+            return;
+        }
+        int games = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        double seconds = args.length > 4 ? Double.parseDouble(args[4]) : 10;
+        double incrementSeconds = args.length > 5 ? Double.parseDouble(args[5]) : 0.1;
+        int concurrency = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+        double elo0 = args.length > 7 ? Double.parseDouble(args[7]) : 0;
+        double elo1 = args.length > 8 ? Double.parseDouble(args[8]) : 5;
+
+        MatchRunner runner = new MatchRunner(new EngineConfiguration("A", args[1]), new EngineConfiguration("B", args[2]),
+                loadOpenings(args[0]), seconds * 1e9, incrementSeconds * 1e9, elo0, elo1);
+        System.out.println("A: " + args[1] + "\nB: " + args[2] + "\n" + games + " games at " + seconds + "+"
+                + incrementSeconds + "s, " + concurrency + " at a time, SPRT elo0 " + elo0 + " elo1 " + elo1);
+        runner.run(games, concurrency);
+    }
+
+    /**
+     * Constructor for a MatchRunner
+     * @param first the configuration results are reported for
+     * @param second its opponent
+     * @param openings FENs of the starting positions, played in order and each with both colors
+     * @param gameTime nanoseconds on each clock at the start of a game
+     * @param increment nanoseconds added to a clock after each of its moves
+     * @param elo0 the Elo difference of the SPRT's null hypothesis
+     * @param elo1 the Elo difference of its alternative, greater than elo0
+     */
+    public MatchRunner(EngineConfiguration first, EngineConfiguration second, ArrayList<String> openings,
+                       double gameTime, double increment, double elo0, double elo1) {
+        this.first = first;
+        this.second = second;
+        this.openings = openings;
+        this.gameTime = gameTime;
+        this.increment = increment;
+        this.lowerBound = Math.log(BETA / (1 - ALPHA));
+        this.upperBound = Math.log((1 - BETA) / ALPHA);
+        this.scoreH0 = expectedScore(elo0);
+        this.scoreH1 = expectedScore(elo1);
+    }
+
+    /**
+     * Play games until the count is reached or the SPRT decides, then print the verdict
+     * @param games the most games to play
+     * @param concurrency the number of games played at a time
+     */
+    public void run(final int games, int concurrency) {
+        ArrayList<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < Math.max(1, concurrency); i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int game = nextGame.getAndIncrement(); game < games && !decided; game = nextGame.getAndIncrement()) {
+                        playAndRecord(game);
+                    }
+                }
+            }, "match-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        double llr = logLikelihoodRatio();
+        if(llr >= upperBound) {
+            System.out.println("SPRT: elo1 accepted, " + first.getName() + " is stronger");
+        } else if(llr <= lowerBound) {
+            System.out.println("SPRT: elo0 accepted, " + first.getName() + " is not stronger");
+        } else {
+            System.out.println("SPRT: inconclusive after " + (wins + draws + losses) + " games");
+        }
+    }
+
+    /**
+     * Play one game of the match and report the running totals
+     * @param game the game's number; even games give the first configuration white
+     */
+    private void playAndRecord(int game) {
+        String opening = openings.get(game / 2 % openings.size());
+        boolean firstIsWhite = game % 2 == 0;
+        String[] ending = new String[1];
+        int whiteScore = playGame(opening, firstIsWhite ? first : second, firstIsWhite ? second : first, ending);
+        int firstScore = firstIsWhite ? whiteScore : 2 - whiteScore;
+        String result = whiteScore == 2 ? "1-0" : whiteScore == 0 ? "0-1" : "1/2-1/2";
+
+        synchronized(this) {
+            if(firstScore == 2) {
+                wins++;
+            } else if(firstScore == 1) {
+                draws++;
+            } else {
+                losses++;
+            }
+            int played = wins + draws + losses;
+            double score = (wins + 0.5 * draws) / played;
+            double llr = logLikelihoodRatio();
+            System.out.println(String.format(Locale.ROOT,
+                    "game %d opening %d %s white %s (%s) | +%d =%d -%d score %.3f elo %.1f +- %.1f llr %.2f [%.2f, %.2f]",
+                    game + 1, game / 2 % openings.size() + 1, firstIsWhite ? first.getName() : second.getName(), result,
+                    ending[0], wins, draws, losses, score, elo(score), eloMargin(), llr, lowerBound, upperBound));
+            if(llr >= upperBound || llr <= lowerBound) {
+                decided = true;
+            }
+        }
+    }
+
+    /**
+     * Play one game
+     * @param fen the starting position
+     * @param white the configuration playing white
+     * @param black the configuration playing black
+     * @param ending receives how the game ended
+     * @return white's score in half points: 0 loss, 1 draw, 2 win
+     */
+    private int playGame(String fen, EngineConfiguration white, EngineConfiguration black, String[] ending) {
+        ChessBoard chessBoard = new ChessBoard(fen);
+        String[] fenFields = fen.split(" ");
+        Color sideToMove = fenFields.length > 1 && fenFields[1].equals("b") ? Color.BLACK : Color.WHITE;
+        int halfmoveClock = fenFields.length > 4 && fenFields[4].matches("\\d+") ? Integer.parseInt(fenFields[4]) : 0;
+
+        ChessEngine whiteEngine = white.newEngine();
+        ChessEngine blackEngine = black.newEngine();
+        whiteEngine.startGame(chessBoard, sideToMove, halfmoveClock);
+        blackEngine.startGame(chessBoard, sideToMove, halfmoveClock);
+        KeyStack positions = new KeyStack();  // the referee's own record, for repetitions and the fifty-move rule
+        positions.reset(Zobrist.key(chessBoard, sideToMove), halfmoveClock);
+        double whiteClock = gameTime;
+        double blackClock = gameTime;
+        int whiteMoves = 0;
+        int blackMoves = 0;
+        String lastMove = null;
+
+        for(int ply = 0; ; ply++) {
+            boolean whiteToMove = sideToMove == Color.WHITE;
+            Color opponent = whiteToMove ? Color.BLACK : Color.WHITE;
+            chessBoard.updateAttackedTiles(sideToMove);
+            ArrayList<String> legalMoves = chessBoard.findAllMoves(sideToMove);
+            if(legalMoves.isEmpty()) {
+                String king = whiteToMove ? chessBoard.getWhiteKingPosition() : chessBoard.getBlackKingPosition();
+                if(StaticExchange.isAttacked(chessBoard, king, opponent)) {
+                    ending[0] = "checkmate";
+                    return whiteToMove ? 0 : 2;
+                }
+                ending[0] = "stalemate";
+                return 1;
+            }
+            if(positions.isDraw(0)) {
+                ending[0] = positions.getHalfmoveClock() >= KeyStack.FIFTY_MOVE_PLIES ? "fifty moves" : "repetition";
+                return 1;
+            }
+            if(insufficientMaterial(chessBoard)) {
+                ending[0] = "insufficient material";
+                return 1;
+            }
+            if(ply >= MAX_PLIES) {
+                ending[0] = "adjudicated";
+                return 1;
+            }
+
+            TimeManager timeManager = whiteToMove ? new TimeManager(whiteClock, blackClock, whiteMoves)
+                    : new TimeManager(blackClock, whiteClock, blackMoves);
+            long start = System.nanoTime();
+            String move = whiteToMove ? white.search(whiteEngine, chessBoard, sideToMove, timeManager, lastMove)
+                    : black.search(blackEngine, chessBoard, sideToMove, timeManager, lastMove);
+            double elapsed = System.nanoTime() - start;
+            if(whiteToMove) {
+                whiteClock += increment - elapsed;
+                whiteMoves++;
+            } else {
+                blackClock += increment - elapsed;
+                blackMoves++;
+            }
+            if((whiteToMove ? whiteClock : blackClock) < increment) {  // the flag fell before the increment was earned
+                ending[0] = "time forfeit";
+                return whiteToMove ? 0 : 2;
+            }
+            if(move == null || !legalMoves.contains(move)) {
+                ending[0] = "illegal move " + move;
+                return whiteToMove ? 0 : 2;
+            }
+
+            boolean zeroing = MoveList.isZeroing(chessBoard, move);
+            chessBoard.detectCaptures(move);
+            chessBoard.movePiece(move);
+            whiteEngine.positionReached(chessBoard, opponent, zeroing);
+            blackEngine.positionReached(chessBoard, opponent, zeroing);
+            positions.push(Zobrist.key(chessBoard, opponent), zeroing);
+            sideToMove = opponent;
+            lastMove = move;
+        }
+    }
+
+    /**
+     * Determine whether neither side can mate: bare kings, or a king and one knight or bishop against a bare king
+     */
+    private static boolean insufficientMaterial(ChessBoard chessBoard) {
+        ArrayList<ChessPiece> pieces = new ArrayList<>(chessBoard.getWhitePieces());
+        pieces.addAll(chessBoard.getBlackPieces());
+        int minorPieces = 0;
+        for(ChessPiece piece : pieces) {
+            if(piece instanceof Knight || piece instanceof Bishop) {
+                minorPieces++;
+            } else if(!(piece instanceof King)) {
+                return false;
+            }
+        }
+        return minorPieces <= 1;
+    }
+
+    /**
+     * Log-likelihood ratio of elo1 against elo0 for the games so far, treating each game's score as normally
+     * distributed with the variance observed
+     */
+    private double logLikelihoodRatio() {
+        int played = wins + draws + losses;
+        if(played == 0) {
+            return 0;
+        }
+        double score = (wins + 0.5 * draws) / played;
+        double variance = variance(score);
+        if(variance == 0) {
+            return 0;  // every game ended the same way, which says nothing about the spread yet
+        }
+        return played * (scoreH1 - scoreH0) * (2 * score - scoreH0 - scoreH1) / (2 * variance);
+    }
+
+    /**
+     * Half the width of the 95% interval of the Elo difference
+     */
+    private double eloMargin() {
+        int played = wins + draws + losses;
+        double score = (wins + 0.5 * draws) / played;
+        double deviation = Math.sqrt(variance(score) / played);
+        return (elo(score + 1.96 * deviation) - elo(score - 1.96 * deviation)) / 2;
+    }
+
+    /**
+     * Variance of one game's score, from the results so far
+     */
+    private double variance(double score) {
+        int played = wins + draws + losses;
+        return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score) + losses * score * score) / played;
+    }
+
+    /**
+     * Elo difference implied by a score, clamped short of the infinite differences of a score of 0 or 1
+     */
+    private static double elo(double score) {
+        double clamped = Math.max(1e-3, Math.min(1 - 1e-3, score));
+        return -400 * Math.log10(1 / clamped - 1);
+    }
+
+    /**
+     * Score expected against an opponent an Elo difference weaker
+     */
+    private static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * Read the opening suite
+     * @param path file of FENs, one per line; blank lines and lines starting with '#' are skipped
+     * @return the FENs
+     * @throws IOException if the file cannot be read or holds no openings
+     */
+    private static ArrayList<String> loadOpenings(String path) throws IOException {
+        ArrayList<String> openings = new ArrayList<>();
+        try(BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                line = line.trim();
+                if(!line.isEmpty() && !line.startsWith("#")) {
+                    openings.add(line.indexOf(' ') < 0 ? line + " w" : line);
+                }
+            }
+        }
+        if(openings.isEmpty()) {
+            throw new IOException("no openings in " + path);
+        }
+        return openings;
+    }
+
+}
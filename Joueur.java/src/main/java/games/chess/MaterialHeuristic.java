@@ -0,0 +1,50 @@
+package games.chess;
+
+import java.util.ArrayList;
+
+/**
+ * Heuristic that scores a board by the relative values of the pieces on it, from one player's point of view
+ */
+public class MaterialHeuristic implements Heuristic {
+
+    private Color player;  // the player whose pieces count positively
+
+    /**
+     * Constructor for a MaterialHeuristic
+     * @param player the color of the player the heuristic scores the board for
+     */
+    public MaterialHeuristic(Color player) {
+        this.player = player;
+    }
+
+    /**
+     * Heuristic function to determine the relative value of a ChessBoard
+     * @param chessBoard the ChessBoard to find the heuristic value of
+     * @return heuristic value in centipawns; sum of the relative values of all pieces on the board
+     */
+    @Override
+    public int h(ChessBoard chessBoard) {
+        int hValue = 0;
+        ArrayList<ChessPiece> whitePieces = chessBoard.getWhitePieces();
+        ArrayList<ChessPiece> blackPieces = chessBoard.getBlackPieces();
+
+        for(ChessPiece piece : whitePieces) {
+            if(player == Color.WHITE) {
+                hValue += piece.getValue() * PAWN;  // white pieces increase h-value for white player
+            } else {
+                hValue -= piece.getValue() * PAWN;  // black pieces decrease h-value for white player
+            }
+        }
+
+        for(ChessPiece piece : blackPieces) {
+            if(player == Color.BLACK) {
+                hValue += piece.getValue() * PAWN;  // black pieces increase h-value for black player
+            } else {
+                hValue -= piece.getValue() * PAWN;  // white pieces decrease h-value for black player
+            }
+        }
+
+        return hValue;
+    }
+
+}
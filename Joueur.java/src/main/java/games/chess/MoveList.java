@@ -0,0 +1,170 @@
+package games.chess;
+
+import games.chess.pieces.Pawn;
+
+import java.util.ArrayList;
+
+/**
+ * List of moves paired with ordering scores, handed out best-first by a lazy selection sort
+ * so that lists which are cut off early are never fully sorted
+ *
+ * Ordering: priority (transposition table) move, promotions, captures by most-valuable-victim /
+ * least-valuable-attacker, killer moves, the remaining quiet moves by history score, and finally
+ * captures that lose material by static exchange evaluation
+ */
+public class MoveList {
+
+    private static final int PRIORITY_SCORE = 1000000000;
+    private static final int PROMOTION_SCORE = 900000000;
+    private static final int CAPTURE_SCORE = 800000000;
+    private static final int KILLER_SCORE = 700000000;  // history scores are capped just below this
+    private static final int LOSING_CAPTURE_SCORE = -1000000;  // only losing captures score below zero
+
+    private ArrayList<String> moves;
+    private int[] scores;
+    private int next;  // index of the next move to hand out, everything before it is already picked
+
+    /**
+     * Constructor for a MoveList, scores every move for ordering
+     * @param chessBoard the board the moves are made on
+     * @param moves the moves in UCI notation, reordered in place as they are picked
+     * @param priorityMove move to try before all others (e.g. from the transposition table), or null
+     * @param depth the depth in the game tree, used to look up killer moves
+     * @param killerTable killer moves for the current search
+     * @param historyTable history scores for quiet moves
+     */
+    public MoveList(ChessBoard chessBoard, ArrayList<String> moves, String priorityMove, int depth, KillerTable killerTable, HistoryTable historyTable) {
+        this.moves = moves;
+        this.scores = new int[moves.size()];
+        this.next = 0;
+
+        for(int i = 0; i < moves.size(); i++) {
+            scores[i] = scoreMove(chessBoard, moves.get(i), priorityMove, depth, killerTable, historyTable);
+        }
+    }
+
+    /**
+     * Determine whether any moves have not yet been handed out
+     * @return true if another move is available
+     */
+    public boolean hasNext() {
+        return next < moves.size();
+    }
+
+    /**
+     * Hand out the highest scoring remaining move, swapping it to the front of the unpicked section
+     * @return the next move in UCI notation
+     */
+    public String next() {
+        int best = next;
+        for(int i = next + 1; i < moves.size(); i++) {
+            if(scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        swap(next, best);
+        return moves.get(next++);
+    }
+
+    /**
+     * Determine whether the move most recently handed out by next() loses material by static exchange
+     * @return true if the last move is a losing capture
+     */
+    public boolean isLosingCapture() {
+        return next > 0 && scores[next - 1] < 0;
+    }
+
+    /**
+     * Getter for the number of moves in the list
+     * @return number of moves
+     */
+    public int size() {
+        return moves.size();
+    }
+
+    /**
+     * Determine whether a move captures a piece on the board
+     * @param chessBoard the board the move is made on
+     * @param move the move in UCI notation
+     * @return true if the destination tile holds a piece of the opposite color
+     */
+    public static boolean isCapture(ChessBoard chessBoard, String move) {
+        ChessPiece attacker = chessBoard.at(move.substring(0, 2));
+        ChessPiece victim = chessBoard.at(move.substring(2, 4));
+        return attacker != null && victim != null && victim.getColor() != attacker.getColor();
+    }
+
+    /**
+     * Determine whether a move resets the fifty-move clock: a capture or a pawn move
+     * @param chessBoard the board before the move
+     * @param move the move in UCI notation
+     * @return true if the move captures or moves a pawn
+     */
+    public static boolean isZeroing(ChessBoard chessBoard, String move) {
+        return isCapture(chessBoard, move) || chessBoard.at(move.substring(0, 2)) instanceof Pawn;
+    }
+
+    /**
+     * Determine whether a move promotes a pawn
+     * @param move the move in UCI notation
+     * @return true if the move carries a promotion suffix
+     */
+    public static boolean isPromotion(String move) {
+        return move.length() == 5;
+    }
+
+    /**
+     * Compute the ordering score of a single move
+     * @return the score, higher scores are searched first
+     */
+    private int scoreMove(ChessBoard chessBoard, String move, String priorityMove, int depth, KillerTable killerTable, HistoryTable historyTable) {
+        if(move.equals(priorityMove)) {
+            return PRIORITY_SCORE;
+        }
+
+        if(isPromotion(move)) {
+            ChessPiece promoted = chessBoard.getPieceFromFEN(move.charAt(4), 1, 'a');  // stand-in to look up the promoted value
+            return PROMOTION_SCORE + promoted.getValue() * 10 + victimValue(chessBoard, move);
+        }
+
+        if(isCapture(chessBoard, move)) {
+            ChessPiece attacker = chessBoard.at(move.substring(0, 2));
+            int mvvLva = victimValue(chessBoard, move) * 10 - attacker.getValue();
+            if(attacker.getValue() > victimValue(chessBoard, move) && StaticExchange.see(chessBoard, move) < 0) {
+                return LOSING_CAPTURE_SCORE + mvvLva;  // only captures of cheaper pieces can lose material
+            }
+            return CAPTURE_SCORE + mvvLva;
+        }
+
+        int killerSlot = killerTable.getSlot(depth, move);
+        if(killerSlot >= 0) {
+            return KILLER_SCORE + 1 - killerSlot;  // newest killer first
+        }
+
+        if(historyTable.containsAction(move)) {
+            return Math.min(historyTable.getScore(move), KILLER_SCORE - 1);
+        }
+        return 0;
+    }
+
+    /**
+     * Find the value of the piece captured by a move
+     * @return the captured piece's value, or 0 if the move does not capture
+     */
+    private int victimValue(ChessBoard chessBoard, String move) {
+        return isCapture(chessBoard, move) ? chessBoard.at(move.substring(2, 4)).getValue() : 0;
+    }
+
+    /**
+     * Swap two moves along with their scores
+     */
+    private void swap(int i, int j) {
+        String move = moves.get(i);
+        moves.set(i, moves.get(j));
+        moves.set(j, move);
+        int score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+}
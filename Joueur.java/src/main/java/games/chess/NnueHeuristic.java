@@ -0,0 +1,133 @@
+package games.chess;
+
+import java.util.Arrays;
+
+/**
+ * Heuristic that scores a board with a NnueNetwork, from one player's point of view. It keeps the network's
+ * accumulators for every board along the line being followed, so a move costs one pass over the weight columns it
+ * changes and a leaf costs only the output layer. The network evaluates for the side to move, which the heuristic
+ * tracks from the moves made; the board it is reset to, and any board scored from scratch, is taken to have its
+ * player to move, as at the root of that player's search.
+ *
+ * Each player holds its own instance, since the accumulators belong to one search, while the network is shared
+ */
+public class NnueHeuristic implements IncrementalHeuristic {
+
+    private static final String PROMOTIONS = "pnbrqk";  // promotion letters by kind
+
+    private NnueNetwork network;
+    private Color player;  // the player whose advantage counts positively
+    private int hiddenSize;
+    private short[] accumulators;  // per board: white's view, then black's view, hiddenSize each
+    private Color[] sideToMove;  // per board
+    private int size;  // boards on the line; an entry past them is scratch space for h()
+
+    /**
+     * Constructor for a NnueHeuristic
+     * @param network the network, which may be shared by any number of heuristics
+     * @param player the color of the player the heuristic scores the board for
+     */
+    public NnueHeuristic(NnueNetwork network, Color player) {
+        this.network = network;
+        this.player = player;
+        this.hiddenSize = network.getHiddenSize();
+        this.accumulators = new short[64 * 2 * hiddenSize];
+        this.sideToMove = new Color[64];
+    }
+
+    /**
+     * Heuristic function to determine the relative value of a ChessBoard, from scratch and without disturbing the
+     * line being followed
+     * @param chessBoard the ChessBoard to find the heuristic value of, with the player to move
+     * @return heuristic value in centipawns
+     */
+    @Override
+    public int h(ChessBoard chessBoard) {
+        ensureCapacity(size + 1);
+        fill(size, chessBoard);
+        return score(size);
+    }
+
+    @Override
+    public void reset(ChessBoard chessBoard) {
+        size = 1;
+        fill(0, chessBoard);
+    }
+
+    @Override
+    public void makeMove(ChessBoard chessBoard, String move) {
+        ensureCapacity(size + 1);
+        int before = size - 1;
+        int after = size++;
+
+        int fromTile = (move.charAt(1) - '1') * 8 + (move.charAt(0) - 'a');
+        int toTile = (move.charAt(3) - '1') * 8 + (move.charAt(2) - 'a');
+        ChessPiece mover = chessBoard.at(move.charAt(1) - '0', move.charAt(0));
+        ChessPiece captured = chessBoard.at(move.charAt(3) - '0', move.charAt(2));
+        int moverKind = Zobrist.pieceKind(mover) / 2;
+        int landingKind = move.length() > 4 ? PROMOTIONS.indexOf(Character.toLowerCase(move.charAt(4))) : moverKind;
+        Color color = mover.getColor();
+
+        Color[] perspectives = {Color.WHITE, Color.BLACK};
+        for(int view = 0; view < 2; view++) {
+            Color perspective = perspectives[view];
+            boolean own = color == perspective;
+            network.update(accumulators, offset(before, view), offset(after, view),
+                    NnueNetwork.feature(moverKind, own, fromTile, perspective),
+                    NnueNetwork.feature(landingKind, own, toTile, perspective),
+                    captured == null ? -1 : NnueNetwork.feature(captured, toTile, perspective));
+        }
+        sideToMove[after] = color == Color.WHITE ? Color.BLACK : Color.WHITE;
+    }
+
+    @Override
+    public void unmakeMove() {
+        size--;
+    }
+
+    @Override
+    public int current(ChessBoard chessBoard) {
+        return score(size - 1);
+    }
+
+    /**
+     * Compute an entry's accumulators by looking at every piece on a board, with the player to move
+     */
+    private void fill(int entry, ChessBoard chessBoard) {
+        network.refresh(accumulators, offset(entry, 0), chessBoard, Color.WHITE);
+        network.refresh(accumulators, offset(entry, 1), chessBoard, Color.BLACK);
+        sideToMove[entry] = player;
+    }
+
+    /**
+     * Score the board an entry describes
+     * @param entry the entry
+     * @return heuristic value in centipawns for the player
+     */
+    private int score(int entry) {
+        boolean whiteToMove = sideToMove[entry] == Color.WHITE;
+        int value = network.output(accumulators, offset(entry, whiteToMove ? 0 : 1), offset(entry, whiteToMove ? 1 : 0));
+        return sideToMove[entry] == player ? value : -value;
+    }
+
+    /**
+     * Where one view's accumulators of an entry start
+     * @param entry the entry
+     * @param view 0 for white's view, 1 for black's
+     */
+    private int offset(int entry, int view) {
+        return (2 * entry + view) * hiddenSize;
+    }
+
+    /**
+     * Make room for an entry past the given count
+     */
+    private void ensureCapacity(int entries) {
+        if(entries < sideToMove.length) {
+            return;
+        }
+        sideToMove = Arrays.copyOf(sideToMove, sideToMove.length * 2);
+        accumulators = Arrays.copyOf(accumulators, sideToMove.length * 2 * hiddenSize);
+    }
+
+}
@@ -0,0 +1,189 @@
+package games.chess;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Weights of a small quantized evaluation network of the "efficiently updatable" kind (NNUE). The input is one
+ * feature per piece kind, color and tile, seen from one player's side: own and enemy pieces are told apart and the
+ * board is flipped for black, so both players share the weights. The first layer maps the features to a hidden
+ * layer of 16-bit accumulators, one set per side, and a move only adds and subtracts the weight columns of the few
+ * features it changes. The output layer reads the clipped accumulators of the side to move and then the other side.
+ *
+ * The file is little-endian: the bytes "NNUE", then 32-bit version (1), hidden size, output scale, accumulator
+ * quantization QA and output weight quantization QB, then 16-bit feature weights (768 columns of the hidden size,
+ * feature after feature), 16-bit hidden biases, 16-bit output weights (own side first) and a 32-bit output bias.
+ * It is memory-mapped and copied into arrays once, so every search thread reads the same plain arrays
+ */
+public class NnueNetwork {
+
+    public static final int FEATURES = 768;  // 2 sides x 6 piece kinds x 64 tiles
+
+    private static final int MAGIC = 'N' | 'N' << 8 | 'U' << 16 | 'E' << 24;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+
+    private final int hiddenSize;
+    private final int scale;  // centipawns per unit of the unquantized output
+    private final int accumulatorQuantization;  // QA, the value a clipped accumulator saturates at
+    private final int outputQuantization;  // QB
+    private final short[] featureWeights;  // hiddenSize weights per feature
+    private final short[] featureBiases;
+    private final short[] outputWeights;  // hiddenSize for the side to move, then hiddenSize for the other side
+    private final int outputBias;
+
+    /**
+     * Constructor for a NnueNetwork, maps the weights file and reads it
+     * @param path path of the weights file
+     * @throws IOException if the file cannot be read or does not hold a network of the expected layout
+     */
+    public NnueNetwork(String path) throws IOException {
+        ByteBuffer data;
+        try(FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("too large to map");
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());  // stays valid after the channel closes
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        if(data.capacity() < HEADER_BYTES || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("not a version " + VERSION + " NNUE file");
+        }
+        hiddenSize = data.getInt(8);
+        scale = data.getInt(12);
+        accumulatorQuantization = data.getInt(16);
+        outputQuantization = data.getInt(20);
+        if(hiddenSize <= 0 || hiddenSize > 4096 || accumulatorQuantization <= 0 || outputQuantization <= 0) {
+            throw new IOException("bad header");
+        }
+        long expected = HEADER_BYTES + 2L * (FEATURES * hiddenSize + hiddenSize + 2 * hiddenSize) + 4;
+        if(data.capacity() != expected) {
+            throw new IOException("expected " + expected + " bytes for hidden size " + hiddenSize);
+        }
+
+        data.position(HEADER_BYTES);
+        featureWeights = new short[FEATURES * hiddenSize];
+        featureBiases = new short[hiddenSize];
+        outputWeights = new short[2 * hiddenSize];
+        data.asShortBuffer().get(featureWeights).get(featureBiases).get(outputWeights);
+        outputBias = data.getInt(data.capacity() - 4);
+    }
+
+    /**
+     * Getter for the size of the hidden layer, the length of one side's accumulators
+     * @return the hidden size
+     */
+    public int getHiddenSize() {
+        return hiddenSize;
+    }
+
+    /**
+     * Index of the feature for a piece, seen from one side
+     * @param piece the piece
+     * @param tile the piece's tile, (row - 1) * 8 + column
+     * @param perspective the side the board is seen from
+     * @return the feature index, 0-767
+     */
+    public static int feature(ChessPiece piece, int tile, Color perspective) {
+        return feature(Zobrist.pieceKind(piece) / 2, piece.getColor() == perspective, tile, perspective);
+    }
+
+    /**
+     * Index of the feature for a piece kind, seen from one side
+     * @param kind the piece kind, Zobrist.pieceKind() / 2
+     * @param own true if the piece belongs to the side the board is seen from
+     * @param tile the piece's tile, (row - 1) * 8 + column
+     * @param perspective the side the board is seen from
+     * @return the feature index, 0-767
+     */
+    public static int feature(int kind, boolean own, int tile, Color perspective) {
+        int square = perspective == Color.WHITE ? tile : tile ^ 56;
+        return ((own ? 0 : 6) + kind) * 64 + square;
+    }
+
+    /**
+     * Compute one side's accumulators from scratch
+     * @param accumulators the array to write to
+     * @param offset where the side's hiddenSize accumulators start
+     * @param chessBoard the board
+     * @param perspective the side
+     */
+    public void refresh(short[] accumulators, int offset, ChessBoard chessBoard, Color perspective) {
+        System.arraycopy(featureBiases, 0, accumulators, offset, hiddenSize);
+        for(ChessPiece piece : chessBoard.getWhitePieces()) {
+            add(accumulators, offset, feature(piece, tile(piece), perspective));
+        }
+        for(ChessPiece piece : chessBoard.getBlackPieces()) {
+            add(accumulators, offset, feature(piece, tile(piece), perspective));
+        }
+    }
+
+    /**
+     * Compute one side's accumulators after a move from those before it, in one pass: the mover leaves its tile,
+     * lands (possibly promoted) on another and a captured piece, if any, is taken off
+     * @param accumulators the array holding both sets
+     * @param from where the accumulators before the move start
+     * @param to where the accumulators after the move start
+     * @param removed feature of the mover on its old tile
+     * @param added feature of the mover on its new tile
+     * @param captured feature of the captured piece, or -1 if none
+     */
+    public void update(short[] accumulators, int from, int to, int removed, int added, int captured) {
+        short[] weights = featureWeights;
+        int removedOffset = removed * hiddenSize;
+        int addedOffset = added * hiddenSize;
+        if(captured < 0) {
+            for(int i = 0; i < hiddenSize; i++) {
+                accumulators[to + i] = (short)(accumulators[from + i] - weights[removedOffset + i] + weights[addedOffset + i]);
+            }
+        } else {
+            int capturedOffset = captured * hiddenSize;
+            for(int i = 0; i < hiddenSize; i++) {
+                accumulators[to + i] = (short)(accumulators[from + i] - weights[removedOffset + i]
+                        + weights[addedOffset + i] - weights[capturedOffset + i]);
+            }
+        }
+    }
+
+    /**
+     * Run the output layer
+     * @param accumulators the array holding the accumulators
+     * @param own where the side to move's accumulators start
+     * @param other where the other side's accumulators start
+     * @return the evaluation in centipawns for the side to move
+     */
+    public int output(short[] accumulators, int own, int other) {
+        int clip = accumulatorQuantization;
+        short[] weights = outputWeights;
+        long sum = 0;
+        for(int i = 0; i < hiddenSize; i++) {
+            sum += Math.min(Math.max(accumulators[own + i], 0), clip) * weights[i];
+        }
+        for(int i = 0; i < hiddenSize; i++) {
+            sum += Math.min(Math.max(accumulators[other + i], 0), clip) * weights[hiddenSize + i];
+        }
+        return (int)((sum + outputBias) * scale / ((long)accumulatorQuantization * outputQuantization));
+    }
+
+    /**
+     * Add a feature's weights to one side's accumulators
+     */
+    private void add(short[] accumulators, int offset, int feature) {
+        int weightOffset = feature * hiddenSize;
+        for(int i = 0; i < hiddenSize; i++) {
+            accumulators[offset + i] += featureWeights[weightOffset + i];
+        }
+    }
+
+    /**
+     * Tile number of a piece
+     */
+    private static int tile(ChessPiece piece) {
+        return (piece.rowPosition - 1) * 8 + (piece.colPosition - 'a');
+    }
+
+}
@@ -0,0 +1,134 @@
+package games.chess;
+
+import games.chess.pieces.King;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Opening book in the Polyglot binary format: 16-byte big-endian entries of key (8 bytes), move (2), weight (2)
+ * and learn data (4), sorted by key. The file is memory-mapped rather than read, so a probe touches only the
+ * few pages its binary search visits and the book costs no heap however large it is
+ */
+public class OpeningBook {
+
+    private static final int ENTRY_SIZE = 16;
+    private static final String PROMOTION_PIECES = " nbrq";  // Polyglot's promotion field, 1 = knight ... 4 = queen
+
+    private MappedByteBuffer entries;
+    private int entryCount;
+    private Random random;  // picks between book moves in proportion to their weights
+
+    /**
+     * Constructor for an OpeningBook, maps the book file into memory
+     * @param path path of the Polyglot .bin file
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public OpeningBook(String path) throws IOException {
+        try(FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());  // stays valid after the channel closes
+        }
+        entryCount = entries.capacity() / ENTRY_SIZE;
+        random = new Random();
+    }
+
+    /**
+     * Choose a book move for a board state, at random in proportion to the moves' weights
+     * @param chessBoard the board
+     * @param sideToMove the color of the player to move
+     * @return a legal move in UCI notation, or null if the position is not in the book
+     */
+    public String probe(ChessBoard chessBoard, Color sideToMove) {
+        ArrayList<String> moves = new ArrayList<>();
+        ArrayList<Integer> weights = new ArrayList<>();
+        long key = Zobrist.key(chessBoard, sideToMove);
+        int first = firstEntry(key);
+        if(first == entryCount || keyAt(first) != key) {
+            return null;  // most probes miss, so skip move generation
+        }
+        ArrayList<String> legalMoves = chessBoard.findAllMoves(sideToMove);
+
+        int totalWeight = 0;
+        for(int i = first; i < entryCount && keyAt(i) == key; i++) {
+            String move = decodeMove(chessBoard, entries.getShort(i * ENTRY_SIZE + 8) & 0xffff);
+            int weight = entries.getShort(i * ENTRY_SIZE + 10) & 0xffff;
+            if(weight > 0 && legalMoves.contains(move)) {  // a key collision or unsupported move is never played
+                moves.add(move);
+                weights.add(weight);
+                totalWeight += weight;
+            }
+        }
+
+        if(moves.isEmpty()) {
+            return null;
+        }
+        int pick = random.nextInt(totalWeight);
+        for(int i = 0; i < moves.size(); i++) {
+            pick -= weights.get(i);
+            if(pick < 0) {
+                return moves.get(i);
+            }
+        }
+        return moves.get(moves.size() - 1);
+    }
+
+    /**
+     * Binary search for the first entry whose key is not below a key, comparing keys as unsigned numbers
+     * @param key the key to look for
+     * @return index of the first entry with that key, or of the next larger key if there is none
+     */
+    private int firstEntry(long key) {
+        int low = 0;
+        int high = entryCount;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(keyAt(middle) + Long.MIN_VALUE < key + Long.MIN_VALUE) {  // unsigned comparison
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Read the key of an entry
+     * @param index the entry's index
+     * @return the entry's 64-bit key
+     */
+    private long keyAt(int index) {
+        return entries.getLong(index * ENTRY_SIZE);
+    }
+
+    /**
+     * Convert a Polyglot move to UCI notation. Polyglot writes castling as the king capturing its own rook,
+     * which becomes the king's two-tile move
+     * @param chessBoard the board the move is made on
+     * @param move the 16-bit Polyglot move: to-file, to-row, from-file, from-row, promotion in 3-bit fields
+     * @return the move in UCI notation
+     */
+    private String decodeMove(ChessBoard chessBoard, int move) {
+        char toCol = (char)('a' + (move & 7));
+        int toRow = ((move >> 3) & 7) + 1;
+        char fromCol = (char)('a' + ((move >> 6) & 7));
+        int fromRow = ((move >> 9) & 7) + 1;
+        int promotion = (move >> 12) & 7;
+
+        ChessPiece mover = chessBoard.at(fromRow, fromCol);
+        if(mover instanceof King && fromCol == 'e' && (toCol == 'h' || toCol == 'a')) {
+            toCol = toCol == 'h' ? 'g' : 'c';
+        }
+
+        String uci = "" + fromCol + fromRow + toCol + toRow;
+        if(promotion > 0 && promotion < PROMOTION_PIECES.length()) {
+            uci += PROMOTION_PIECES.charAt(promotion);
+        }
+        return uci;
+    }
+
+}
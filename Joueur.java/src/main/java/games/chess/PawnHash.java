@@ -0,0 +1,110 @@
+package games.chess;
+
+/**
+ * Fixed-size cache of pawn structure evaluations, keyed by the Zobrist key of the pawns alone. Pawns move rarely,
+ * so nearly every board a search evaluates shares its pawn structure with one evaluated before. Each slot holds
+ * the key, the structure's score and the passed pawns of both colors in primitive arrays.
+ *
+ * A table belongs to one evaluator and is only used by its thread. An empty slot has key 0, which is also the key
+ * of a board without pawns; its score of 0 and empty passed pawn masks are then correct anyway
+ */
+public class PawnHash {
+
+    public static final int DEFAULT_SIZE = 1 << 13;
+
+    private long[] keys;
+    private int[] scores;  // for white, in centipawns
+    private long[] whitePassedPawns;  // tiles 0-63 as (row - 1) * 8 + column
+    private long[] blackPassedPawns;
+    private int mask;  // size - 1
+    private long probes;
+    private long hits;
+
+    /**
+     * Constructor for a PawnHash of the default size
+     */
+    public PawnHash() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Constructor for a PawnHash
+     * @param size the number of slots, rounded down to a power of two
+     */
+    public PawnHash(int size) {
+        size = Integer.highestOneBit(Math.max(1, size));
+        keys = new long[size];
+        scores = new int[size];
+        whitePassedPawns = new long[size];
+        blackPassedPawns = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Look up a pawn structure
+     * @param pawnKey the Zobrist key of the pawns
+     * @return the slot holding it, or -1 if it is not cached
+     */
+    public int find(long pawnKey) {
+        probes++;
+        int slot = (int)pawnKey & mask;
+        if(keys[slot] != pawnKey) {
+            return -1;
+        }
+        hits++;
+        return slot;
+    }
+
+    /**
+     * Cache the evaluation of a pawn structure, replacing whatever shared its slot
+     * @param pawnKey the Zobrist key of the pawns
+     * @param score the structure's score for white, in centipawns
+     * @param whitePassed white's passed pawns as a tile mask
+     * @param blackPassed black's passed pawns as a tile mask
+     * @return the slot it was stored in
+     */
+    public int store(long pawnKey, int score, long whitePassed, long blackPassed) {
+        int slot = (int)pawnKey & mask;
+        keys[slot] = pawnKey;
+        scores[slot] = score;
+        whitePassedPawns[slot] = whitePassed;
+        blackPassedPawns[slot] = blackPassed;
+        return slot;
+    }
+
+    /**
+     * Get the score of a cached pawn structure
+     * @param slot a slot returned by find() or store()
+     * @return the score for white, in centipawns
+     */
+    public int getScore(int slot) {
+        return scores[slot];
+    }
+
+    /**
+     * Get the passed pawns of a cached pawn structure
+     * @param slot a slot returned by find() or store()
+     * @param color the color of the passed pawns
+     * @return the passed pawns as a tile mask
+     */
+    public long getPassedPawns(int slot, Color color) {
+        return color == Color.WHITE ? whitePassedPawns[slot] : blackPassedPawns[slot];
+    }
+
+    /**
+     * Getter for the number of lookups
+     * @return calls to find()
+     */
+    public long getProbes() {
+        return probes;
+    }
+
+    /**
+     * Getter for the number of lookups that found the structure
+     * @return successful calls to find()
+     */
+    public long getHits() {
+        return hits;
+    }
+
+}
@@ -0,0 +1,197 @@
+package games.chess;
+
+/**
+ * Searches on the opponent's clock. While the opponent thinks, a background thread predicts the opponent's
+ * reply and then searches the position that reply would lead to, filling the shared transposition and history
+ * tables. If the opponent plays the predicted move (a ponder hit) that search simply continues as our turn;
+ * otherwise (a ponder miss) it is stopped and the normal search starts with the warmed tables
+ */
+public class Ponderer {
+
+    private static final double PREDICTION_SHARE = 0.25;  // share of the opponent's usual turn time spent predicting their reply
+    private static final int PREDICTION_TABLE_MEGABYTES = 1;  // the prediction search is short, so its table is small
+
+    private ChessBoard chessBoard;  // board after our move, before the opponent's reply
+    private Color currentPlayer;  // our color
+    private double opponentTimeRemaining;
+    private HistoryTable historyTable;
+    private TranspositionTable transpositionTable;
+    private KeyStack positionHistory;  // positions of the game up to our move, or null for none
+    private NnueNetwork network;  // evaluates for both searches, or null for the positional heuristic
+    private volatile String predictedMove;  // null until the prediction is made
+    private QuiescentSolver activeSolver;  // the search currently running on the background thread
+    private boolean stopped;
+    private String ponderResult;
+    private Thread thread;
+
+    /**
+     * Constructor for a Ponderer
+     * @param chessBoard the board after our move, which is copied
+     * @param currentPlayer our color
+     * @param opponentTimeRemaining the opponent's remaining time, used to size the prediction search
+     * @param historyTable our history table, only touched while the opponent is thinking
+     * @param transpositionTable our transposition table
+     */
+    public Ponderer(ChessBoard chessBoard, Color currentPlayer, double opponentTimeRemaining, HistoryTable historyTable, TranspositionTable transpositionTable) {
+        this.chessBoard = new ChessBoard(chessBoard);
+        this.currentPlayer = currentPlayer;
+        this.opponentTimeRemaining = opponentTimeRemaining;
+        this.historyTable = historyTable;
+        this.transpositionTable = transpositionTable;
+    }
+
+    /**
+     * Start pondering on a background thread
+     */
+    public void start() {
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ponder();
+            }
+        }, "ponder");
+        thread.setDaemon(true);  // never keep the client alive because of pondering
+        thread.start();
+    }
+
+    /**
+     * Predict the opponent's reply, then search the resulting position for us until stopped
+     */
+    private void ponder() {
+        Color opponent = currentPlayer == Color.WHITE ? Color.BLACK : Color.WHITE;
+        chessBoard.updateAttackedTiles(opponent);
+        if(chessBoard.findAllMoves(opponent).isEmpty()) {
+            return;  // the game is over
+        }
+
+        String prediction = predictedMove;
+        if(prediction == null) {
+            // the opponent's point of view needs its own tables, as stored values are relative to the searching player
+            QuiescentSolver predictor = new QuiescentSolver(chessBoard, opponent, opponentTimeRemaining * PREDICTION_SHARE,
+                    new HistoryTable(), new TranspositionTable(PREDICTION_TABLE_MEGABYTES));
+            if(network != null) {
+                predictor.setHeuristic(new NnueHeuristic(network, opponent));
+            }
+            if(positionHistory != null) {
+                predictor.setPositionHistory(positionHistory);
+            }
+            if(!activate(predictor)) {
+                return;
+            }
+            prediction = predictor.computeBestMove();
+            if(prediction == null) {
+                return;
+            }
+        }
+
+        ChessBoard ponderBoard = new ChessBoard(chessBoard);
+        boolean zeroing = MoveList.isZeroing(ponderBoard, prediction);
+        ponderBoard.detectCaptures(prediction);
+        ponderBoard.movePiece(prediction);
+        ponderBoard.updateAttackedTiles(currentPlayer);
+
+        QuiescentSolver solver = new QuiescentSolver(ponderBoard, currentPlayer, new TimeManager(TimeManager.UNLIMITED), historyTable, transpositionTable);
+        solver.setReplayHistory(false);
+        if(network != null) {
+            solver.setHeuristic(new NnueHeuristic(network, currentPlayer));  // values in the shared table must agree with our turn's
+        }
+        if(positionHistory != null) {
+            KeyStack ponderHistory = new KeyStack(positionHistory);
+            ponderHistory.push(Zobrist.key(ponderBoard, currentPlayer), zeroing);  // as if the opponent played the prediction
+            solver.setPositionHistory(ponderHistory);
+        }
+        if(!activate(solver)) {
+            return;
+        }
+        predictedMove = prediction;
+        ponderResult = solver.computeBestMove();
+    }
+
+    /**
+     * Make a solver the one that stop() interrupts
+     * @param solver the solver about to run on the background thread
+     * @return false if pondering was already stopped, in which case the solver must not run
+     */
+    private synchronized boolean activate(QuiescentSolver solver) {
+        if(stopped) {
+            return false;
+        }
+        activeSolver = solver;
+        return true;
+    }
+
+    /**
+     * Use a reply that is already expected, e.g. from the principal variation, instead of searching for one.
+     * Must be called before start()
+     * @param predictedMove the expected opponent reply in UCI notation, or null to search for a prediction
+     */
+    public void setPredictedMove(String predictedMove) {
+        this.predictedMove = predictedMove;
+    }
+
+    /**
+     * Set the positions of the game so far, so that the pondering searches recognise repetitions
+     * @param positionHistory keys of the positions played, ending with the board after our move; it is copied
+     */
+    public void setPositionHistory(KeyStack positionHistory) {
+        this.positionHistory = new KeyStack(positionHistory);
+    }
+
+    /**
+     * Evaluate with a network in the pondering searches, as the turn's own search does. Must be called before start()
+     * @param network the network, or null for the positional heuristic
+     */
+    public void setNetwork(NnueNetwork network) {
+        this.network = network;
+    }
+
+    /**
+     * Getter for the predicted opponent reply
+     * @return the predicted move in UCI notation, or null if the prediction has not been made yet
+     */
+    public String getPredictedMove() {
+        return predictedMove;
+    }
+
+    /**
+     * Determine whether the opponent played the move being pondered on
+     * @param opponentMove the opponent's actual move in UCI notation
+     * @return true on a ponder hit
+     */
+    public boolean isHit(String opponentMove) {
+        return opponentMove != null && opponentMove.equals(predictedMove);
+    }
+
+    /**
+     * After a ponder hit, let the pondering search continue as our turn for up to the allocated time
+     * @param allocatedTime the time allotted to our turn, in nanoseconds
+     * @return the move found by pondering in UCI notation, or null if it produced none
+     */
+    public String finish(double allocatedTime) {
+        try {
+            thread.join(Math.max(1, (long)(allocatedTime / 1e6)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stop();
+        return ponderResult;
+    }
+
+    /**
+     * Stop pondering and wait for the background thread to finish
+     */
+    public void stop() {
+        synchronized(this) {
+            stopped = true;
+            if(activeSolver != null) {
+                activeSolver.stop();
+            }
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,468 @@
+package games.chess;
+
+import java.util.Arrays;
+
+/**
+ * Heuristic that scores a board by material, piece placement and pawn structure, from one player's point of view.
+ *
+ * Each piece is worth its material value plus a piece-square bonus for its tile, with one table for the middlegame
+ * and one for the endgame. The two totals are blended by the game phase, counted from the knights, bishops, rooks and
+ * queens still on the board, so e.g. the king is drawn to shelter while queens are on and to the centre once they
+ * are off. These totals are kept up to date as a search makes and takes back moves, a move changing at most three
+ * tiles, so a leaf is scored without looking at every piece.
+ *
+ * Doubled, isolated and backward pawns are penalised and passed pawns rewarded the further they have come; these
+ * terms depend on the pawns alone, so they are computed once per pawn structure and cached in a PawnHash under a
+ * pawn key that is also kept up to date move by move. Terms that also depend on the other pieces (a passed pawn's
+ * way being free, the pawns sheltering each king) are added on every call, from the cached passed pawn masks and
+ * the pawn tile masks. The piece values and these weights are EvaluationParameters, so they can be tuned.
+ *
+ * Tiles are numbered (row - 1) * 8 + column, so a mask shifted left by 8 moves every tile one row up. Piece-square
+ * tables are written as seen by white, row 8 first, so white reads them at tile ^ 56 and black at tile
+ */
+public class PositionalHeuristic implements IncrementalHeuristic {
+
+    private static final long FILE_A = 0x0101010101010101L;
+
+    // piece kinds, in the order of Zobrist.pieceKind() / 2
+    private static final int PAWN_KIND = 0;
+    private static final int KING_KIND = 5;
+    private static final String PROMOTIONS = "pnbrqk";  // promotion letters by kind
+
+    private static final int[] PHASE = {0, 1, 1, 2, 4, 0};  // phase weight by kind
+    private static final int FULL_PHASE = 24;  // the phase of the starting position
+
+    private static final int[] PAWN_MIDDLEGAME = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             10,  10,  10,  10,  10,  10,  10,  10,
+             10,  10,  20,  30,  30,  20,  10,  10,
+              5,   5,  10,  25,  25,  10,   5,   5,
+              0,   0,   0,  20,  20,   0,   0,   0,
+              5,  -5, -10,   0,   0, -10,  -5,   5,
+              5,  10,  10, -20, -20,  10,  10,   5,
+              0,   0,   0,   0,   0,   0,   0,   0};
+    private static final int[] PAWN_ENDGAME = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             30,  30,  30,  30,  30,  30,  30,  30,
+             20,  20,  20,  20,  20,  20,  20,  20,
+             10,  10,  10,  10,  10,  10,  10,  10,
+              5,   5,   5,   5,   5,   5,   5,   5,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0};
+    private static final int[] KNIGHT = {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20,   0,   0,   0,   0, -20, -40,
+            -30,   0,  10,  15,  15,  10,   0, -30,
+            -30,   5,  15,  20,  20,  15,   5, -30,
+            -30,   0,  15,  20,  20,  15,   0, -30,
+            -30,   5,  10,  15,  15,  10,   5, -30,
+            -40, -20,   0,   5,   5,   0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50};
+    private static final int[] BISHOP = {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,  10,  10,   5,   0, -10,
+            -10,   5,   5,  10,  10,   5,   5, -10,
+            -10,   0,  10,  10,  10,  10,   0, -10,
+            -10,  10,  10,  10,  10,  10,  10, -10,
+            -10,   5,   0,   0,   0,   0,   5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20};
+    private static final int[] ROOK_MIDDLEGAME = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+              5,  10,  10,  10,  10,  10,  10,   5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+              0,   0,   0,   5,   5,   0,   0,   0};
+    private static final int[] ROOK_ENDGAME = new int[64];  // a rook is as good anywhere once the board opens up
+    private static final int[] QUEEN = {
+            -20, -10, -10,  -5,  -5, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,   5,   5,   5,   0, -10,
+             -5,   0,   5,   5,   5,   5,   0,  -5,
+              0,   0,   5,   5,   5,   5,   0,  -5,
+            -10,   5,   5,   5,   5,   5,   0, -10,
+            -10,   0,   5,   0,   0,   0,   0, -10,
+            -20, -10, -10,  -5,  -5, -10, -10, -20};
+    private static final int[] KING_MIDDLEGAME = {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+             20,  20,   0,   0,   0,   0,  20,  20,
+             20,  30,  10,   0,   0,  10,  30,  20};
+    private static final int[] KING_ENDGAME = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10,   0,   0, -10, -20, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -30,   0,   0,   0,   0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50};
+
+    private static final int[][] MIDDLEGAME = {PAWN_MIDDLEGAME, KNIGHT, BISHOP, ROOK_MIDDLEGAME, QUEEN, KING_MIDDLEGAME};
+    private static final int[][] ENDGAME = {PAWN_ENDGAME, KNIGHT, BISHOP, ROOK_ENDGAME, QUEEN, KING_ENDGAME};
+
+    private Color player;  // the player whose pieces count positively
+    private PawnHash pawnHash = new PawnHash();
+
+    // weights from the EvaluationParameters, see there
+    private int[] material;  // by kind
+    private int doubled;
+    private int isolated;
+    private int backward;
+    private int[] passed;  // by rows advanced from the pawn's first row
+    private int freePasser;
+    private int shieldNear;
+    private int shieldFar;
+
+    // terms of the boards along the line being followed, one entry per ply, all for white
+    private int[] middlegame;  // material and middlegame piece-square bonuses
+    private int[] endgame;  // material and endgame piece-square bonuses
+    private int[] phase;  // sum of the phase weights, FULL_PHASE at the start of the game
+    private long[] pawnKeys;
+    private long[] whitePawns;
+    private long[] blackPawns;
+    private int[] whiteKings;  // the king tiles
+    private int[] blackKings;
+    private int size;  // boards on the line; an entry past them is scratch space for h()
+
+    /**
+     * Constructor for a PositionalHeuristic with the active parameters
+     * @param player the color of the player the heuristic scores the board for
+     */
+    public PositionalHeuristic(Color player) {
+        this(player, EvaluationParameters.getActive());
+    }
+
+    /**
+     * Constructor for a PositionalHeuristic
+     * @param player the color of the player the heuristic scores the board for
+     * @param parameters the weights to score with; later changes to them are not seen
+     */
+    public PositionalHeuristic(Color player, EvaluationParameters parameters) {
+        this.player = player;
+        material = new int[] {PAWN, parameters.get(EvaluationParameters.KNIGHT), parameters.get(EvaluationParameters.BISHOP),
+                parameters.get(EvaluationParameters.ROOK), parameters.get(EvaluationParameters.QUEEN), 0};
+        doubled = parameters.get(EvaluationParameters.DOUBLED);
+        isolated = parameters.get(EvaluationParameters.ISOLATED);
+        backward = parameters.get(EvaluationParameters.BACKWARD);
+        passed = new int[8];
+        for(int row = 1; row <= 6; row++) {
+            passed[row] = parameters.get(EvaluationParameters.PASSED + row - 1);
+        }
+        freePasser = parameters.get(EvaluationParameters.FREE_PASSER);
+        shieldNear = parameters.get(EvaluationParameters.SHIELD_NEAR);
+        shieldFar = parameters.get(EvaluationParameters.SHIELD_FAR);
+        middlegame = new int[64];
+        endgame = new int[64];
+        phase = new int[64];
+        pawnKeys = new long[64];
+        whitePawns = new long[64];
+        blackPawns = new long[64];
+        whiteKings = new int[64];
+        blackKings = new int[64];
+    }
+
+    /**
+     * Heuristic function to determine the relative value of a ChessBoard, from scratch and without disturbing the
+     * line being followed
+     * @param chessBoard the ChessBoard to find the heuristic value of
+     * @return heuristic value in centipawns; material, piece placement and pawn structure of the player less the opponent's
+     */
+    @Override
+    public int h(ChessBoard chessBoard) {
+        ensureCapacity(size + 1);
+        fill(size, chessBoard);
+        return score(size, chessBoard);
+    }
+
+    @Override
+    public void reset(ChessBoard chessBoard) {
+        size = 1;
+        fill(0, chessBoard);
+    }
+
+    @Override
+    public void makeMove(ChessBoard chessBoard, String move) {
+        ensureCapacity(size + 1);
+        int from = size - 1;
+        int to = size++;
+        middlegame[to] = middlegame[from];
+        endgame[to] = endgame[from];
+        phase[to] = phase[from];
+        pawnKeys[to] = pawnKeys[from];
+        whitePawns[to] = whitePawns[from];
+        blackPawns[to] = blackPawns[from];
+        whiteKings[to] = whiteKings[from];
+        blackKings[to] = blackKings[from];
+
+        int fromTile = (move.charAt(1) - '1') * 8 + (move.charAt(0) - 'a');
+        int toTile = (move.charAt(3) - '1') * 8 + (move.charAt(2) - 'a');
+        ChessPiece mover = chessBoard.at(move.charAt(1) - '0', move.charAt(0));
+        ChessPiece captured = chessBoard.at(move.charAt(3) - '0', move.charAt(2));
+        int moverKind = Zobrist.pieceKind(mover) / 2;
+        Color color = mover.getColor();
+
+        update(to, moverKind, color, fromTile, -1);
+        if(captured != null) {
+            update(to, Zobrist.pieceKind(captured) / 2, captured.getColor(), toTile, -1);
+        }
+        int landingKind = move.length() > 4 ? PROMOTIONS.indexOf(Character.toLowerCase(move.charAt(4))) : moverKind;
+        update(to, landingKind, color, toTile, 1);
+    }
+
+    @Override
+    public void unmakeMove() {
+        size--;
+    }
+
+    @Override
+    public int current(ChessBoard chessBoard) {
+        return score(size - 1, chessBoard);
+    }
+
+    /**
+     * Getter for the pawn hash, e.g. to read its hit rate
+     * @return the heuristic's pawn hash
+     */
+    public PawnHash getPawnHash() {
+        return pawnHash;
+    }
+
+    /**
+     * Compute an entry's terms by looking at every piece on a board
+     * @param entry the entry to fill
+     * @param chessBoard the board
+     */
+    private void fill(int entry, ChessBoard chessBoard) {
+        middlegame[entry] = 0;
+        endgame[entry] = 0;
+        phase[entry] = 0;
+        pawnKeys[entry] = 0;
+        whitePawns[entry] = 0;
+        blackPawns[entry] = 0;
+        for(ChessPiece piece : chessBoard.getWhitePieces()) {
+            update(entry, Zobrist.pieceKind(piece) / 2, Color.WHITE, tile(piece), 1);
+        }
+        for(ChessPiece piece : chessBoard.getBlackPieces()) {
+            update(entry, Zobrist.pieceKind(piece) / 2, Color.BLACK, tile(piece), 1);
+        }
+    }
+
+    /**
+     * Add a piece to an entry's terms, or remove it
+     * @param entry the entry to update
+     * @param kind the piece's kind, Zobrist.pieceKind() / 2
+     * @param color the piece's color
+     * @param tile the piece's tile
+     * @param sign 1 to add the piece, -1 to remove it
+     */
+    private void update(int entry, int kind, Color color, int tile, int sign) {
+        boolean white = color == Color.WHITE;
+        int square = white ? tile ^ 56 : tile;
+        int whiteSign = white ? sign : -sign;
+        middlegame[entry] += whiteSign * (material[kind] + MIDDLEGAME[kind][square]);
+        endgame[entry] += whiteSign * (material[kind] + ENDGAME[kind][square]);
+        phase[entry] += sign * PHASE[kind];
+        if(kind == PAWN_KIND) {
+            pawnKeys[entry] ^= Zobrist.random(2 * kind + (white ? 1 : 0), tile);
+            if(white) {
+                whitePawns[entry] ^= 1L << tile;
+            } else {
+                blackPawns[entry] ^= 1L << tile;
+            }
+        } else if(kind == KING_KIND && sign > 0) {
+            if(white) {
+                whiteKings[entry] = tile;
+            } else {
+                blackKings[entry] = tile;
+            }
+        }
+    }
+
+    /**
+     * Score the board an entry describes
+     * @param entry the entry
+     * @param chessBoard the board, for the terms that depend on which tiles are empty
+     * @return heuristic value in centipawns for the player
+     */
+    private int score(int entry, ChessBoard chessBoard) {
+        long white = whitePawns[entry];
+        long black = blackPawns[entry];
+        int slot = pawnHash.find(pawnKeys[entry]);
+        if(slot < 0) {
+            slot = pawnHash.store(pawnKeys[entry], pawnScore(white, black) - pawnScore(mirror(black), mirror(white)),
+                    passedPawns(white, black), mirror(passedPawns(mirror(black), mirror(white))));
+        }
+
+        int gamePhase = Math.min(phase[entry], FULL_PHASE);  // promotions can take it past the start
+        int tapered = (middlegame[entry] * gamePhase + endgame[entry] * (FULL_PHASE - gamePhase)) / FULL_PHASE;
+        int shelter = shield(whiteKings[entry], white) - shield(blackKings[entry] ^ 56, mirror(black));
+        int score = tapered + pawnHash.getScore(slot)
+                + freePassers(chessBoard, pawnHash.getPassedPawns(slot, Color.WHITE), Color.WHITE)
+                - freePassers(chessBoard, pawnHash.getPassedPawns(slot, Color.BLACK), Color.BLACK)
+                + shelter * gamePhase / FULL_PHASE;  // shelter matters while there are pieces to attack the king
+        return player == Color.WHITE ? score : -score;
+    }
+
+    /**
+     * Make room for an entry past the given count
+     */
+    private void ensureCapacity(int entries) {
+        if(entries < middlegame.length) {
+            return;
+        }
+        int length = middlegame.length * 2;
+        middlegame = Arrays.copyOf(middlegame, length);
+        endgame = Arrays.copyOf(endgame, length);
+        phase = Arrays.copyOf(phase, length);
+        pawnKeys = Arrays.copyOf(pawnKeys, length);
+        whitePawns = Arrays.copyOf(whitePawns, length);
+        blackPawns = Arrays.copyOf(blackPawns, length);
+        whiteKings = Arrays.copyOf(whiteKings, length);
+        blackKings = Arrays.copyOf(blackKings, length);
+    }
+
+    /**
+     * Score the structure of one side's pawns, as if that side were white
+     * @param own the side's pawns
+     * @param enemy the other side's pawns
+     * @return the side's pawn structure score in centipawns
+     */
+    private int pawnScore(long own, long enemy) {
+        int score = 0;
+        for(long pawns = own; pawns != 0; pawns &= pawns - 1) {
+            int tile = Long.numberOfTrailingZeros(pawns);
+            int row = tile >>> 3;
+            long file = FILE_A << (tile & 7);
+            long neighbours = adjacentFiles(tile & 7);
+
+            if((own & file & rowsAbove(row)) != 0) {
+                score -= doubled;
+            }
+            if((own & neighbours) == 0) {
+                score -= isolated;
+            } else if((own & neighbours & rowsUpTo(row)) == 0 && row < 6
+                    && (enemy & neighbours & rowMask(row + 2)) != 0) {
+                score -= backward;  // no neighbour can support it and an enemy pawn guards the tile in front
+            }
+            if(isPassed(tile, own, enemy)) {
+                score += passed[row];
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Find one side's passed pawns, as if that side were white
+     * @param own the side's pawns
+     * @param enemy the other side's pawns
+     * @return the passed pawns as a tile mask
+     */
+    private static long passedPawns(long own, long enemy) {
+        long passed = 0;
+        for(long pawns = own; pawns != 0; pawns &= pawns - 1) {
+            int tile = Long.numberOfTrailingZeros(pawns);
+            if(isPassed(tile, own, enemy)) {
+                passed |= 1L << tile;
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * Determine whether a pawn of the side playing up the board is passed: no enemy pawn can block or capture it,
+     * and it is the front pawn on its file
+     */
+    private static boolean isPassed(int tile, long own, long enemy) {
+        int row = tile >>> 3;
+        long file = FILE_A << (tile & 7);
+        return (enemy & (file | adjacentFiles(tile & 7)) & rowsAbove(row)) == 0 && (own & file & rowsAbove(row)) == 0;
+    }
+
+    /**
+     * Bonus for passed pawns whose next tile is empty, growing as they advance
+     * @param chessBoard the board
+     * @param passed the side's passed pawns as a tile mask
+     * @param color the side's color
+     * @return the bonus in centipawns
+     */
+    private int freePassers(ChessBoard chessBoard, long passed, Color color) {
+        int bonus = 0;
+        for(; passed != 0; passed &= passed - 1) {
+            int tile = Long.numberOfTrailingZeros(passed);
+            int row = tile >>> 3;
+            int nextRow = color == Color.WHITE ? row + 1 : row - 1;
+            if(nextRow >= 0 && nextRow < 8 && chessBoard.at(nextRow + 1, (char)('a' + (tile & 7))) == null) {
+                bonus += freePasser * (color == Color.WHITE ? row : 7 - row);
+            }
+        }
+        return bonus;
+    }
+
+    /**
+     * Bonus for the pawns in front of a king that is still on its first two rows, as if its side were white
+     * @param king the king's tile
+     * @param pawns the king's side's pawns
+     * @return the bonus in centipawns
+     */
+    private int shield(int king, long pawns) {
+        int row = king >>> 3;
+        if(row > 1) {
+            return 0;  // the king has left its shelter
+        }
+        long files = FILE_A << (king & 7) | adjacentFiles(king & 7);
+        return shieldNear * Long.bitCount(pawns & files & rowMask(row + 1))
+                + shieldFar * Long.bitCount(pawns & files & rowMask(row + 2));
+    }
+
+    /**
+     * Mask of the files next to a file
+     */
+    private static long adjacentFiles(int file) {
+        return (file > 0 ? FILE_A << (file - 1) : 0) | (file < 7 ? FILE_A << (file + 1) : 0);
+    }
+
+    /**
+     * Mask of one row, 0-7
+     */
+    private static long rowMask(int row) {
+        return 0xffL << (8 * row);
+    }
+
+    /**
+     * Mask of the rows above a row, 0-7
+     */
+    private static long rowsAbove(int row) {
+        return row == 7 ? 0 : -1L << (8 * (row + 1));
+    }
+
+    /**
+     * Mask of a row and the rows below it, 0-7
+     */
+    private static long rowsUpTo(int row) {
+        return ~rowsAbove(row);
+    }
+
+    /**
+     * Flip a tile mask top to bottom, so black's pawns can be scored as if they were white's
+     */
+    private static long mirror(long tiles) {
+        return Long.reverseBytes(tiles);
+    }
+
+    /**
+     * Tile number of a piece
+     */
+    private static int tile(ChessPiece piece) {
+        return (piece.rowPosition - 1) * 8 + (piece.colPosition - 'a');
+    }
+
+}
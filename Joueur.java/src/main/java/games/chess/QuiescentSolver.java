@@ -13,10 +13,39 @@ import java.util.HashMap;
  */
 public class QuiescentSolver extends ChessSolver implements Heuristic {
 
-    private double timeRemaining;  // the total time left for the player until the end of the game
+    public static final int DEFAULT_FUTILITY_MARGIN = 2 * PAWN;  // a quiet move at the frontier rarely gains more than this
+    public static final int DEFAULT_REVERSE_FUTILITY_MARGIN = 2 * PAWN;  // per remaining ply
+    public static final int DEFAULT_RAZOR_MARGIN = 3 * PAWN;
+    private static final int REVERSE_FUTILITY_DEPTH = 3;  // remaining plies at which reverse futility applies
+    private static final int RAZOR_DEPTH = 2;  // remaining plies at which razoring applies
+
+    private TimeManager timeManager;  // decides how long the turn may take
     private double startTime;  // time at which the player's turn begins
+    private int searchValue;  // value of the best move found by the latest quiescentSearch
     private HistoryTable historyTable;  // history table storing effective actions
     private TranspositionTable transpositionTable;  // transposition table storing information about previously seen states
+    private KillerTable killerTable;  // quiet moves that caused cutoffs, per depth
+    private IncrementalHeuristic heuristic;  // evaluates boards at the cutoff, following the moves made along the line
+    private EvaluationCache evaluationCache;  // values the heuristic gave before, possibly shared with other threads
+    private int startDepth = 1;  // first depth limit of iterative deepening
+    private boolean replayHistory = true;  // whether an effective move from the history table may be replayed without searching
+    private SearchControl searchControl;  // stops the search when the hard limit passes or another thread asks
+    private int futilityMargin = DEFAULT_FUTILITY_MARGIN;
+    private int reverseFutilityMargin = DEFAULT_REVERSE_FUTILITY_MARGIN;
+    private int razorMargin = DEFAULT_RAZOR_MARGIN;
+    private ArrayList<Double> iterationTimes = new ArrayList<>();  // time from the start of the search until each depth completed
+    private ArrayList<ArrayList<String>> pvLines = new ArrayList<>();  // best line found below the node being searched at each depth
+    private ArrayList<String> principalVariation = new ArrayList<>();  // best line of the deepest completed depth
+    private boolean followingPv;  // whether the node being entered lies on the principal variation being searched first
+    private int completedDepth;  // deepest depth limit that completed
+    private Bitbases bitbases;  // exact results for king and piece against king, or null
+    private SyzygyTablebase tablebase;  // win/draw/loss of positions with few pieces, or null
+    private ArrayList<String> rootMoves;  // the only moves searched at the root, or null for every legal move
+    private boolean reachedHorizon;  // whether the latest depth returned any value that was not exact
+    private KeyStack positions;  // keys of the game's positions followed by those on the line being searched
+    private SearchStatistics statistics = new SearchStatistics();  // counted by the searching thread only
+    private StatisticsSink statisticsSink;  // receives a line per completed depth and per turn, or null
+    private int maxDepthLimit;  // deepest depth limit iterative deepening may reach, or 0 for no fixed depth
 
     /**
      * Constructor for QuiescentSolver
@@ -26,10 +55,27 @@ public class QuiescentSolver extends ChessSolver implements Heuristic {
      * @param historyTable reference to the player's history table, developed throughout the game
      */
     public QuiescentSolver(ChessBoard chessBoard, Color currentPlayer, double timeRemaining, HistoryTable historyTable, TranspositionTable transpositionTable) {
+        this(chessBoard, currentPlayer, new TimeManager(timeRemaining, timeRemaining, 0), historyTable, transpositionTable);
+    }
+
+    /**
+     * Constructor for QuiescentSolver
+     * @param chessBoard current state of the ChessBoard
+     * @param currentPlayer the current player's color
+     * @param timeManager decides how long the turn may take
+     * @param historyTable reference to the player's history table, developed throughout the game
+     */
+    public QuiescentSolver(ChessBoard chessBoard, Color currentPlayer, TimeManager timeManager, HistoryTable historyTable, TranspositionTable transpositionTable) {
         super(chessBoard, currentPlayer);
-        this.timeRemaining = timeRemaining;
+        this.timeManager = timeManager;
+        this.searchControl = new SearchControl(timeManager);
         this.historyTable = historyTable;
         this.transpositionTable = transpositionTable;
+        this.killerTable = new KillerTable();
+        this.heuristic = new PositionalHeuristic(currentPlayer);
+        this.evaluationCache = new EvaluationCache(heuristic, currentPlayer);
+        this.positions = new KeyStack();
+        this.positions.reset(Zobrist.key(chessBoard, currentPlayer), 0);  // no history until setPositionHistory
     }
 
     /**
@@ -38,66 +84,293 @@ public class QuiescentSolver extends ChessSolver implements Heuristic {
      */
     @Override
     public String computeBestMove() {
-        startTime = System.nanoTime();
-        double allocatedTime = allocatedTurnTime();
-        double timeLimit = startTime + allocatedTime;
+        timeManager.start();
+        startTime = timeManager.getStartTime();
+        statistics.searchStarted();
 
         ArrayList<String> possibleMoves = chessBoard.findAllMoves(currentPlayer);
-        String action = quiescentSearch(chessBoard, possibleMoves, 0, timeLimit);
-        double time1 = System.nanoTime();
+        if(rootMoves != null) {
+            possibleMoves.retainAll(rootMoves);
+        }
+        if(possibleMoves.size() == 1) {
+            return possibleMoves.get(0);  // nothing to decide, so spend no time
+        }
+        ArrayList<String> seedVariation = principalVariation;  // quiescentSearch replaces it
+        String action = quiescentSearch(chessBoard, 0);
+        if(!seedVariation.isEmpty()) {
+            principalVariation = seedVariation;  // keep searching the seeded line first
+        }
 
-        String moveFromHistory = findMoveFromHistory(possibleMoves);
+        String moveFromHistory = replayHistory ? findMoveFromHistory(possibleMoves) : null;
         if(moveFromHistory != null) {  // see if we can reuse an effective previous move
             return moveFromHistory;
         }
 
-        for(int depth = 1; depth <= INFINITY; depth++) {  // iterative deepening starting at depth 1
+        String completedAction = deepen(maxDepthLimit > 0 ? maxDepthLimit : INFINITY);  // result of the deepest depth that completed
+        if(completedAction != null) {
+            action = completedAction;  // answer with the deepest depth that completed
+        }
+        if(action == null) {  // stopped before even the depth 0 pass completed, e.g. by a tiny node limit
+            MoveList moveList = new MoveList(chessBoard, possibleMoves, null, 0, killerTable, historyTable);
+            action = moveList.hasNext() ? moveList.next() : null;  // the move searched first
+        }
+        if(statisticsSink != null) {
+            statisticsSink.report(statistics.turnCompleted(completedDepth, action));
+        }
+        return action;
+    }
 
-            if(action != null && System.nanoTime() - startTime > allocatedTime) {
-                break;  // break to return the most recently found action
+    /**
+     * Find the K best moves, each with its value and principal variation. The first line is searched like a turn;
+     * each further line searches again without the moves already found, to the depth the first line reached.
+     * The transposition table is kept between lines, so these searches mostly reuse the first one's work
+     * @param lineCount the number of lines K
+     * @return up to K lines, best first; fewer if there are fewer legal moves or the search was stopped
+     */
+    public ArrayList<AnalysisLine> analyze(int lineCount) {
+        ArrayList<String> candidates = chessBoard.findAllMoves(currentPlayer);
+        if(rootMoves != null) {
+            candidates.retainAll(rootMoves);
+        }
+        ArrayList<String> allowedMoves = rootMoves;
+        ArrayList<AnalysisLine> lines = new ArrayList<>();
+        int maxDepth = maxDepthLimit > 0 ? maxDepthLimit : INFINITY;  // the depth of the first line, once it is known
+        statistics.searchStarted();
+
+        while(lines.size() < lineCount && !candidates.isEmpty()) {
+            timeManager.start();  // every line gets the turn's time, though later lines rarely need much of it
+            startTime = timeManager.getStartTime();
+            rootMoves = candidates;  // excludes the best moves of earlier lines
+            principalVariation = new ArrayList<>();
+            completedDepth = 0;
+            String move = deepen(maxDepth);
+            if(move == null || !candidates.contains(move)) {
+                break;  // stopped before the first depth completed
             }
+            lines.add(new AnalysisLine(move, searchValue, principalVariation, completedDepth));
+            maxDepth = Math.min(maxDepth, completedDepth);
+            candidates = new ArrayList<>(candidates);
+            candidates.remove(move);
+        }
+
+        rootMoves = allowedMoves;
+        return lines;
+    }
+
+    /**
+     * Run iterative deepening from the start depth
+     * @param maxDepth the deepest depth limit to search
+     * @return the best move of the deepest depth that completed, or null if none did
+     */
+    private String deepen(int maxDepth) {
+        String completedAction = null;  // result of the deepest depth that completed
+        for(int depth = startDepth; depth <= maxDepth; depth++) {  // iterative deepening starting at depth 1
 
-            String searchResult = quiescentSearch(chessBoard, possibleMoves, depth, allocatedTime);
-            double time2 = System.nanoTime();
-            double timeRatio = (time2 - time1) / (time1 - startTime);  // compute ratio of this computation's time to previous time
-            double timePrediction = (time2 - time1) * timeRatio;  // use ratio to predict how long the next computation will take
-            startTime = time1;  // set both timers forward an interval
-            time1 = time2;
-            if(time2 + timePrediction > timeLimit) {  // determine whether the next level will fit within time constraint
-                action = searchResult;  // return the current result if it will take too long
+            if(searchControl.isStopped()) {
                 break;
             }
+            if(completedAction != null && isTimed() && !timeManager.shouldStartIteration()) {
+                break;  // the next depth is not expected to finish within the soft limit
+            }
+
+            double iterationStart = System.nanoTime();
+            statistics.iterationStarted();
+            String searchResult = quiescentSearch(chessBoard, depth);
+            double iterationEnd = System.nanoTime();
+            if(searchResult == null) {
+                break;  // the hard limit passed or the search was stopped, so this depth is incomplete
+            }
+            iterationTimes.add(iterationEnd - startTime);
+            completedAction = searchResult;
+            completedDepth = depth;
+            timeManager.iterationCompleted(searchResult, searchValue, iterationEnd - iterationStart);
+            if(statisticsSink != null) {
+                statisticsSink.report(statistics.iterationCompleted(depth, searchResult, searchValue));
+            }
+            if(!reachedHorizon) {
+                break;  // every line ended in a bitbase position, so deeper searches find the same
+            }
         }
 
-        return action;
+        return completedAction;
+    }
+
+    /**
+     * Set the first depth limit of iterative deepening, so that parallel helpers can stagger their depths
+     * @param startDepth the first depth limit to search, at least 1
+     */
+    public void setStartDepth(int startDepth) {
+        this.startDepth = startDepth;
+    }
+
+    /**
+     * Search to a fixed depth limit, ignoring the clock, so that every run of the same position does the same work
+     * @param depthLimit the deepest depth limit to complete, or 0 to search until the time or node limit
+     */
+    public void setDepthLimit(int depthLimit) {
+        this.maxDepthLimit = Math.max(0, depthLimit);
+        searchControl.setTimed(maxDepthLimit == 0);
+    }
+
+    /**
+     * Stop the search after a fixed number of nodes, ignoring the clock, so that every run of the same position
+     * does the same work; the move comes from the deepest depth completed within the nodes, or is the first move
+     * in search order if not even the depth 0 pass completed
+     * @param nodeLimit the number of nodes, or 0 for no limit
+     */
+    public void setNodeLimit(long nodeLimit) {
+        searchControl.setNodeLimit(nodeLimit);
+    }
+
+    /**
+     * Determine whether the clock decides how long the search runs, rather than a depth or node limit
+     * @return true if neither a depth limit nor a node limit is set
+     */
+    private boolean isTimed() {
+        return searchControl.isTimed();
+    }
+
+    /**
+     * Set whether an effective move from the history table may be returned without searching
+     * @param replayHistory false to always run iterative deepening
+     */
+    public void setReplayHistory(boolean replayHistory) {
+        this.replayHistory = replayHistory;
+    }
+
+    /**
+     * Set the bitbases probed for positions of king and piece against king, which are then scored exactly
+     * @param bitbases the bitbases, or null to search these endgames like any other position
+     */
+    public void setBitbases(Bitbases bitbases) {
+        this.bitbases = bitbases;
+    }
+
+    /**
+     * Set the Syzygy tablebase probed once few enough pieces remain, which then ends the line with its result
+     * @param tablebase the tablebase, or null to probe none
+     */
+    public void setTablebase(SyzygyTablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Restrict the moves searched at the root, e.g. to those a tablebase found best
+     * @param rootMoves legal moves in UCI notation, or null to search every legal move
+     */
+    public void setRootMoves(ArrayList<String> rootMoves) {
+        this.rootMoves = rootMoves;
+    }
+
+    /**
+     * Set the positions of the game so far, so that lines repeating them or reaching the fifty-move limit score
+     * as draws. The solver searches on a copy, so one history can serve several solvers
+     * @param positionHistory keys of the positions played, ending with the current board
+     */
+    public void setPositionHistory(KeyStack positionHistory) {
+        this.positions = new KeyStack(positionHistory);
+    }
+
+    /**
+     * Evaluate with another heuristic, e.g. a NnueHeuristic, instead of the PositionalHeuristic. The solver gets a
+     * new evaluation cache for it, so a shared cache must be set afterwards
+     * @param heuristic the heuristic, used by this solver only
+     */
+    public void setHeuristic(IncrementalHeuristic heuristic) {
+        this.heuristic = heuristic;
+        this.evaluationCache = new EvaluationCache(heuristic, currentPlayer);
+    }
+
+    /**
+     * Share an evaluation cache with other solvers scoring for the same player
+     * @param evaluationCache the cache, used without locks
+     */
+    public void setEvaluationCache(EvaluationCache evaluationCache) {
+        this.evaluationCache = evaluationCache;
+    }
+
+    /**
+     * Set where the search statistics go, a line after every completed depth and one at the end of the turn
+     * @param statisticsSink the sink, or null to report nothing
+     */
+    public void setStatisticsSink(StatisticsSink statisticsSink) {
+        this.statisticsSink = statisticsSink;
+    }
+
+    /**
+     * Getter for the statistics of the latest search, which are only consistent once it has returned
+     * @return the solver's statistics
+     */
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Seed the search with a line expected from an earlier search, which is searched first at every depth
+     * @param principalVariation moves from the current board in UCI notation, starting with the move to make
+     */
+    public void setPrincipalVariation(ArrayList<String> principalVariation) {
+        this.principalVariation = new ArrayList<>(principalVariation);
+    }
+
+    /**
+     * Getter for the principal variation, the line both players are expected to play
+     * @return moves from the current board in UCI notation, from the deepest depth that completed
+     */
+    public ArrayList<String> getPrincipalVariation() {
+        return principalVariation;
+    }
+
+    /**
+     * Getter for the deepest depth limit that completed
+     * @return the depth limit, or 0 if only the initial search completed
+     */
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * Abandon the search from another thread; computeBestMove() returns as soon as it notices
+     */
+    public void stop() {
+        searchControl.stop();
+    }
+
+    /**
+     * Getter for the control that stops this search, for callers that need to stop it or count its nodes
+     * @return the solver's SearchControl
+     */
+    public SearchControl getSearchControl() {
+        return searchControl;
+    }
+
+    /**
+     * Getter for the times at which each depth of iterative deepening completed
+     * @return nanoseconds from the start of the search until each completed depth, in order
+     */
+    public ArrayList<Double> getIterationTimes() {
+        return iterationTimes;
     }
 
     /**
      * Perform a quiescent search up to the given depth limit, without going overtime
      * @param chessBoard The initial state of the chess board
-     * @param possibleMoves The list of possible moves for the current player
      * @param depthLimit The depth limit of actions into the game tree
-     * @param allocatedTime The amount of time allotted to determine the move to make
-     * @return a String in UCI notation representing the best move at this depth limit, or null if a timeout occurs
-     */
-    private String quiescentSearch(ChessBoard chessBoard, ArrayList<String> possibleMoves, int depthLimit, double allocatedTime) {
-        Integer value;
-        value = maxValue(chessBoard, 0, depthLimit, -INFINITY, INFINITY, allocatedTime, null);
-        if(value == null) {
-            return null;  // a timeout is signalled by returning null
-        }
-
-        String bestAction = null;
-        for(String move : possibleMoves) {
-            Integer minimax;
-            minimax = minValue(result(chessBoard, move), 0, depthLimit, -INFINITY, INFINITY, allocatedTime, move);
-            if(minimax == null) {
-                return null;
-            }
-            if(minimax.equals(value)) {
-                bestAction = move;
-            }
+     * @return a String in UCI notation representing the best move at this depth limit, or null if the search was stopped
+     */
+    private String quiescentSearch(ChessBoard chessBoard, int depthLimit) {
+        followingPv = true;
+        reachedHorizon = false;
+        heuristic.reset(chessBoard);
+        int value = maxValue(chessBoard, 0, depthLimit, -INFINITY, INFINITY, null);
+        if(searchControl.isStopped()) {
+            return null;  // the value is incomplete
         }
+        searchValue = value;
+        principalVariation = new ArrayList<>(pvLines.get(0));
+        extendPv(chessBoard, principalVariation, depthLimit);
+
+        String bestAction = principalVariation.isEmpty() ? null : principalVariation.get(0);
 
         // in case no best move is found, compute a random one
         if(bestAction == null) {
@@ -108,6 +381,31 @@ public class QuiescentSolver extends ChessSolver implements Heuristic {
         return bestAction;
     }
 
+    /**
+     * Continue a principal variation cut short by a transposition table entry, which settles a node without
+     * searching a line below it, by following the stored best moves until the depth limit
+     * @param chessBoard the board at the root
+     * @param line the principal variation, extended in place
+     * @param depthLimit the depth limit of the search that found it
+     */
+    private void extendPv(ChessBoard chessBoard, ArrayList<String> line, int depthLimit) {
+        ChessBoard board = chessBoard;
+        for(String move : line) {
+            board = result(board, move);
+        }
+        Color mover = line.size() % 2 == 0 ? currentPlayer : opponent(currentPlayer);
+        while(line.size() < depthLimit) {
+            long tableEntry = transpositionTable.probe(Zobrist.key(board, mover));
+            String move = tableEntry == 0 ? null : TranspositionTable.bestMove(tableEntry);
+            if(move == null || !board.findAllMoves(mover).contains(move)) {
+                break;
+            }
+            line.add(move);
+            board = result(board, move);
+            mover = opponent(mover);
+        }
+    }
+
     /**
      * Computes the maxValue at a certain depth
      * @param chessBoard the current state of the board
@@ -115,66 +413,139 @@ public class QuiescentSolver extends ChessSolver implements Heuristic {
      * @param depthLimit the limit on the depth, at which a heuristic value is returned
      * @param alpha threshold for trimming branches from MIN player
      * @param beta threshold for trimming branches from MAX player
-     * @param allocatedTime The amount of time allotted to determine the move to make
      * @param action The action that produced this ChessBoard
-     * @return the value for MAX player at the given board state, or null if a timeout occurs
+     * @return the value for MAX player at the given board state, meaningless once the search is stopped
      */
-    private Integer maxValue(ChessBoard chessBoard, int depth, int depthLimit, int alpha, int beta, double allocatedTime, String action) {
-        double elapsedTime = System.nanoTime() - startTime;
-        if(elapsedTime > allocatedTime) {
-            return null;  // null signifies that a timeout occurred
+    private int maxValue(ChessBoard chessBoard, int depth, int depthLimit, int alpha, int beta, String action) {
+        if(searchControl.shouldStop()) {
+            return 0;  // discarded by the caller
+        }
+        statistics.node(depth, depthLimit);
+
+        clearPv(depth);
+        String pvMove = followingPv && depth < principalVariation.size() ? principalVariation.get(depth) : null;
+        followingPv = false;  // only the child reached by pvMove continues the principal variation
+
+        if(depth > 0 && positions.isDraw(depth)) {
+            return 0;  // repeated, or fifty moves without a capture or pawn move
+        }
+
+        if(depth > 0) {
+            int exactValue = probeEndgame(chessBoard, currentPlayer);
+            if(exactValue != Bitbases.NO_RESULT) {
+                return exactValue;  // solved, so nothing below this node can change the value
+            }
         }
 
         String priorityMove = null;
-        String boardState = chessBoard.toString();
-        if(transpositionTable.hasEntry(boardState)) {  // if this board state is encountered again
-            Integer tableValue = transpositionTable.getValue(boardState);
-            if(transpositionTable.getDepth(boardState) >= depth) {  // and the value of the table is higher
-                return tableValue;  // then this value is as good as or better than the value at this depth
-            } else {  // re-evaluate this state, trying the stored "best move" first
-                priorityMove = transpositionTable.getBestMove(boardState);
+        long boardKey = positions.getLatestKey();  // the Zobrist key of this board with MAX to move
+        long tableEntry = transpositionTable.probe(boardKey);
+        statistics.ttProbe(tableEntry != 0);
+        if(tableEntry != 0) {  // if this board state is encountered again
+            int tableValue = TranspositionTable.value(tableEntry);
+            int bound = TranspositionTable.bound(tableEntry);
+            if(depth > 0 && TranspositionTable.draft(tableEntry) >= depthLimit - depth) {  // searched at least as deep before
+                if(bound == TranspositionTable.EXACT || bound == TranspositionTable.LOWER_BOUND && tableValue >= beta
+                        || bound == TranspositionTable.UPPER_BOUND && tableValue <= alpha) {
+                    reachedHorizon = true;
+                    return tableValue;  // the stored value, or the stored bound, settles this node
+                }
+                if(bound == TranspositionTable.LOWER_BOUND) {
+                    alpha = Math.max(alpha, tableValue);  // MAX is known to reach at least this much
+                } else {
+                    beta = Math.min(beta, tableValue);  // and here no more than this
+                }
             }
+            priorityMove = TranspositionTable.bestMove(tableEntry);  // re-evaluate this state, trying the stored best move first
+        }
+        if(pvMove != null) {
+            priorityMove = pvMove;
         }
 
         ChessBoard clonedBoard = new ChessBoard(chessBoard);
-        if(cutoff(chessBoard, depth, depthLimit)) {
+        if(depth > 0 && cutoff(chessBoard, depth, depthLimit)) {  // the root is always expanded
             historyTable.insertOrIncrement(action, (int)Math.pow(2, depth));
-            return h(chessBoard);  // if at a cutoff, approximate using heuristic value
+            return evaluate(chessBoard);  // if at a cutoff, approximate using heuristic value
         }
 
-        int value = -INFINITY;
-        ArrayList<String> allMoves = clonedBoard.findAllMoves(currentPlayer);
-
-        if(priorityMove != null) {
-            for(int i = 0; i < allMoves.size(); i++) {  // check if priority move is valid
-                if(priorityMove.equals(allMoves.get(i))) {  // if this move is in the list
-                    allMoves.remove(i);
-                    allMoves.add(0, priorityMove);  // move it to front of list to be evaluated first
-                    break;
+        int remaining = depthLimit - depth;
+        boolean futile = false;  // whether quiet moves at this frontier node cannot raise alpha
+        if(canPrune(chessBoard, depth, depthLimit, currentPlayer)) {
+            int staticValue = evaluate(chessBoard);
+            if(remaining <= REVERSE_FUTILITY_DEPTH && reverseFutilityMargin >= 0
+                    && staticValue - reverseFutilityMargin * remaining >= beta) {
+                return staticValue;  // reverse futility: even after giving up the margin, MAX stays above beta
+            }
+            if(remaining <= RAZOR_DEPTH && razorMargin >= 0 && staticValue + razorMargin <= alpha) {
+                // razoring: search this node as if at the depth limit, i.e. in quiescence, which takes the static value
+                // of a quiescent board and otherwise searches every move except losing captures
+                int razorValue = maxValue(chessBoard, depth, depth, alpha, beta, action);
+                if(searchControl.isStopped() || razorValue <= alpha) {
+                    return razorValue;  // confirmed to fail low
                 }
             }
+            futile = remaining == 1 && futilityMargin >= 0 && staticValue + futilityMargin <= alpha;
         }
 
-        for(String move : allMoves) {
+        int value = -INFINITY;
+        String bestMove = null;  // the move that raised alpha last, if any did
+        ArrayList<String> allMoves = clonedBoard.findAllMoves(currentPlayer);
+        if(depth == 0 && rootMoves != null) {
+            allMoves.retainAll(rootMoves);
+        }
+        MoveList moveList = new MoveList(clonedBoard, allMoves, priorityMove, depth, killerTable, historyTable);
+
+        int searchedMoves = 0;
+        while(moveList.hasNext()) {
+            String move = moveList.next();
+            if(depth >= depthLimit && moveList.isLosingCapture()) {
+                continue;  // beyond the depth limit, captures that lose material are not worth searching
+            }
+            if(futile && isFutile(clonedBoard, move, opponent(currentPlayer))) {
+                continue;  // futility: a quiet move this close to the leaves cannot make up the difference to alpha
+            }
+            searchedMoves++;
             try {
-                Integer min = minValue(result(clonedBoard, move), depth + 1, depthLimit, alpha, beta, allocatedTime, move);
-                if (min == null) {  // a timeout occurred
-                    return null;
+                followingPv = move.equals(pvMove);
+                ChessBoard child = result(clonedBoard, move);
+                positions.push(Zobrist.key(child, opponent(currentPlayer)), MoveList.isZeroing(clonedBoard, move));
+                heuristic.makeMove(clonedBoard, move);
+                int min;
+                try {
+                    min = minValue(child, depth + 1, depthLimit, alpha, beta, move);
+                } finally {
+                    heuristic.unmakeMove();
+                    positions.pop();
+                }
+                if (searchControl.isStopped()) {
+                    return 0;  // the child's value is incomplete
                 }
                 value = Math.max(value, min);
                 if (value >= beta) {
+                    statistics.betaCutoff(searchedMoves);
                     historyTable.insertOrIncrement(action, (int)Math.pow(2, depth));
-                    if(priorityMove != null) {  // store value for beta cutoff in TT
-                        transpositionTable.putEntry(boardState, depth, value, action);
+                    if(!MoveList.isCapture(clonedBoard, move) && !MoveList.isPromotion(move)) {
+                        killerTable.addKiller(depth, move);  // remember quiet moves that refute this position
                     }
+                    transpositionTable.putEntry(boardKey, depthLimit - depth, value, TranspositionTable.LOWER_BOUND, move);  // store value for beta cutoff in TT
                     return value;  // if value exceeds the beta threshold, cut this branch
                 }
+                if(value > alpha) {
+                    updatePv(depth, move);  // the best line so far goes through this move
+                    bestMove = move;
+                }
                 alpha = Math.max(alpha, value);  // set a new threshold for alpha
             } catch (StackOverflowError e) {
-                return h(chessBoard);  // return the heuristic value if quiescent search runs out of memory
+                return evaluate(chessBoard);  // return the heuristic value if quiescent search runs out of memory
             }
         }
 
+        if(searchedMoves == 0) {
+            return evaluate(chessBoard);  // every move was pruned, so fall back on the heuristic value
+        }
+        // exact if a move landed inside the window, otherwise every move failed low and the value is an upper bound
+        transpositionTable.putEntry(boardKey, depthLimit - depth, value,
+                bestMove != null ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND, bestMove);
         return value;
     }
 
@@ -185,67 +556,220 @@ public class QuiescentSolver extends ChessSolver implements Heuristic {
      * @param depthLimit the limit on the depth, at which a heuristic value is returned
      * @param alpha threshold for trimming branches from MIN player
      * @param beta threshold for trimming branches from MAX player
-     * @param allocatedTime the time allotted for completing this turn
      * @param action the action that produced this ChessBoard
-     * @return the value for MIN player at the given board state, or null if a timeout occurs
+     * @return the value for MIN player at the given board state, meaningless once the search is stopped
      */
-    private Integer minValue(ChessBoard chessBoard, int depth, int depthLimit, int alpha, int beta, double allocatedTime, String action) {
-        double elapsedTime = System.nanoTime() - startTime;
-        if(elapsedTime > allocatedTime) {
-            return null;  // null signifies that a timeout occurred
+    private int minValue(ChessBoard chessBoard, int depth, int depthLimit, int alpha, int beta, String action) {
+        if(searchControl.shouldStop()) {
+            return 0;  // discarded by the caller
+        }
+        statistics.node(depth, depthLimit);
+
+        clearPv(depth);
+        String pvMove = followingPv && depth < principalVariation.size() ? principalVariation.get(depth) : null;
+        followingPv = false;  // only the child reached by pvMove continues the principal variation
+
+        if(depth > 0 && positions.isDraw(depth)) {
+            return 0;  // repeated, or fifty moves without a capture or pawn move
+        }
+
+        if(depth > 0) {
+            int exactValue = probeEndgame(chessBoard, opponent(currentPlayer));
+            if(exactValue != Bitbases.NO_RESULT) {
+                return exactValue;  // solved, so nothing below this node can change the value
+            }
         }
 
         String priorityMove = null;
-        String boardState = chessBoard.toString();
-        if(transpositionTable.hasEntry(boardState)) {  // if this board state is encountered again
-            if(transpositionTable.getDepth(boardState) >= depth) {  // and the value of the table is higher
-                return transpositionTable.getValue(boardState);  // then this value is as good as or better than the value at this depth
-            } else {  // re-evaluate this state, trying the stored "best move" first
-                priorityMove = transpositionTable.getBestMove(boardState);
+        long boardKey = positions.getLatestKey();  // the Zobrist key of this board with MIN to move
+        long tableEntry = transpositionTable.probe(boardKey);
+        statistics.ttProbe(tableEntry != 0);
+        if(tableEntry != 0) {  // if this board state is encountered again
+            int tableValue = TranspositionTable.value(tableEntry);
+            int bound = TranspositionTable.bound(tableEntry);
+            if(TranspositionTable.draft(tableEntry) >= depthLimit - depth) {  // searched at least as deep before
+                if(bound == TranspositionTable.EXACT || bound == TranspositionTable.LOWER_BOUND && tableValue >= beta
+                        || bound == TranspositionTable.UPPER_BOUND && tableValue <= alpha) {
+                    reachedHorizon = true;
+                    return tableValue;  // the stored value, or the stored bound, settles this node
+                }
+                if(bound == TranspositionTable.LOWER_BOUND) {
+                    alpha = Math.max(alpha, tableValue);  // MIN cannot push the value below this
+                } else {
+                    beta = Math.min(beta, tableValue);  // and can hold it to this
+                }
             }
+            priorityMove = TranspositionTable.bestMove(tableEntry);  // re-evaluate this state, trying the stored best move first
+        }
+        if(pvMove != null) {
+            priorityMove = pvMove;
         }
 
         ChessBoard clonedBoard = new ChessBoard(chessBoard);
         if(cutoff(chessBoard, depth, depthLimit)) {
-            return h(chessBoard);
+            return evaluate(chessBoard);
         }
 
-        int value = INFINITY;
-        ArrayList<String> allMoves = clonedBoard.findAllMoves(currentPlayer);
-
-        if(priorityMove != null) {
-            for(int i = 0; i < allMoves.size(); i++) {  // check if priority move is valid
-                if(priorityMove.equals(allMoves.get(i))) {  // if this move is in the list
-                    allMoves.remove(i);
-                    allMoves.add(0, priorityMove);  // move it to front of list to be evaluated first
-                    break;
+        int remaining = depthLimit - depth;
+        boolean futile = false;  // whether quiet moves at this frontier node cannot lower beta
+        if(canPrune(chessBoard, depth, depthLimit, opponent(currentPlayer))) {
+            int staticValue = evaluate(chessBoard);
+            if(remaining <= REVERSE_FUTILITY_DEPTH && reverseFutilityMargin >= 0
+                    && staticValue + reverseFutilityMargin * remaining <= alpha) {
+                return staticValue;  // reverse futility: even after giving up the margin, MIN stays below alpha
+            }
+            if(remaining <= RAZOR_DEPTH && razorMargin >= 0 && staticValue - razorMargin >= beta) {
+                // razoring: search this node as if at the depth limit, i.e. in quiescence, which takes the static value
+                // of a quiescent board and otherwise searches every move except losing captures
+                int razorValue = minValue(chessBoard, depth, depth, alpha, beta, action);
+                if(searchControl.isStopped() || razorValue >= beta) {
+                    return razorValue;  // confirmed to fail high
                 }
             }
+            futile = remaining == 1 && futilityMargin >= 0 && staticValue - futilityMargin >= beta;
         }
 
-        for (String move : allMoves) {
+        int value = INFINITY;
+        String bestMove = null;  // the move that lowered beta last, if any did
+        ArrayList<String> allMoves = clonedBoard.findAllMoves(opponent(currentPlayer));  // MIN moves the opponent's pieces
+        MoveList moveList = new MoveList(clonedBoard, allMoves, priorityMove, depth, killerTable, historyTable);
+
+        int searchedMoves = 0;
+        while(moveList.hasNext()) {
+            String move = moveList.next();
+            if(depth >= depthLimit && moveList.isLosingCapture()) {
+                continue;  // beyond the depth limit, captures that lose material are not worth searching
+            }
+            if(futile && isFutile(clonedBoard, move, currentPlayer)) {
+                continue;  // futility: a quiet move this close to the leaves cannot make up the difference to beta
+            }
+            searchedMoves++;
             try {
-                Integer max = maxValue(result(clonedBoard, move), depth + 1, depthLimit, alpha, beta, allocatedTime, move);
-                if (max == null) {  // a timeout occurred
-                    return null;
+                followingPv = move.equals(pvMove);
+                ChessBoard child = result(clonedBoard, move);
+                positions.push(Zobrist.key(child, currentPlayer), MoveList.isZeroing(clonedBoard, move));
+                heuristic.makeMove(clonedBoard, move);
+                int max;
+                try {
+                    max = maxValue(child, depth + 1, depthLimit, alpha, beta, move);
+                } finally {
+                    heuristic.unmakeMove();
+                    positions.pop();
+                }
+                if (searchControl.isStopped()) {
+                    return 0;  // the child's value is incomplete
                 }
                 value = Math.min(value, max);
                 if (value <= alpha) {
+                    statistics.betaCutoff(searchedMoves);  // MIN's cutoff, the mirror of a beta cutoff
                     historyTable.insertOrIncrement(action, (int)Math.pow(2, depth));
-                    if(priorityMove != null) {  // store value for alpha cutoff in TT
-                        transpositionTable.putEntry(boardState, depth, value, action);
+                    if(!MoveList.isCapture(clonedBoard, move) && !MoveList.isPromotion(move)) {
+                        killerTable.addKiller(depth, move);  // remember quiet moves that refute this position
                     }
+                    transpositionTable.putEntry(boardKey, depthLimit - depth, value, TranspositionTable.UPPER_BOUND, move);  // store value for alpha cutoff in TT
                     return value;  // if the value is below the alpha threshold, cut this branch
                 }
+                if(value < beta) {
+                    updatePv(depth, move);  // the best line so far goes through this move
+                    bestMove = move;
+                }
                 beta = Math.min(beta, value);  // set a new threshold for beta
             } catch (StackOverflowError e) {
-                return h(chessBoard);  // return the heuristic value if quiescent search runs out of memory
+                return evaluate(chessBoard);  // return the heuristic value if quiescent search runs out of memory
             }
         }
 
+        if(searchedMoves == 0) {
+            return evaluate(chessBoard);  // every move was pruned, so fall back on the heuristic value
+        }
+        // exact if a move landed inside the window, otherwise every move failed high and the value is a lower bound
+        transpositionTable.putEntry(boardKey, depthLimit - depth, value,
+                bestMove != null ? TranspositionTable.EXACT : TranspositionTable.LOWER_BOUND, bestMove);
         return value;
     }
 
+    /**
+     * Score a board from the bitbases, or else the Syzygy tablebase
+     * @param chessBoard the board
+     * @param mover the color of the player to move
+     * @return the exact value for MAX player, or Bitbases.NO_RESULT if no table covers the board
+     */
+    private int probeEndgame(ChessBoard chessBoard, Color mover) {
+        int exactValue = bitbases == null ? Bitbases.NO_RESULT : bitbases.probe(chessBoard, mover, currentPlayer);
+        if(exactValue == Bitbases.NO_RESULT && tablebase != null) {
+            exactValue = tablebase.probe(chessBoard, mover, currentPlayer);
+        }
+        return exactValue;
+    }
+
+    /**
+     * Forget the line of the node about to be searched at a depth
+     * @param depth the depth of the node
+     */
+    private void clearPv(int depth) {
+        while(pvLines.size() <= depth + 1) {
+            pvLines.add(new ArrayList<String>());
+        }
+        pvLines.get(depth).clear();
+        pvLines.get(depth + 1).clear();
+    }
+
+    /**
+     * Record that the best line from the node at a depth starts with a move, followed by the child's best line
+     * @param depth the depth of the node
+     * @param move the move leading to the child that was just searched
+     */
+    private void updatePv(int depth, String move) {
+        ArrayList<String> line = pvLines.get(depth);
+        line.clear();
+        line.add(move);
+        line.addAll(pvLines.get(depth + 1));
+    }
+
+    /**
+     * Determines whether the shallow-depth pruning rules may be applied at a node: never at the root,
+     * beyond the depth limit, or when the side to move is in check
+     * @param chessBoard the current state of the ChessBoard
+     * @param depth the current depth of the game tree
+     * @param depthLimit the current maximum depth for iterative deepening
+     * @param mover the color of the side to move at this node
+     * @return true if reverse futility, razoring and futility pruning are allowed
+     */
+    private boolean canPrune(ChessBoard chessBoard, int depth, int depthLimit, Color mover) {
+        int remaining = depthLimit - depth;
+        if(depth == 0 || remaining < 1 || remaining > Math.max(REVERSE_FUTILITY_DEPTH, RAZOR_DEPTH)) {
+            return false;
+        }
+        return !inCheck(chessBoard, mover);
+    }
+
+    /**
+     * Determines whether a move at a futile frontier node may be skipped: only quiet moves that do not give check
+     * @param chessBoard the board the move is made on
+     * @param move the move in UCI notation
+     * @param defender the color of the side that would be checked by the move
+     * @return true if the move is quiet and leaves the defender out of check
+     */
+    private boolean isFutile(ChessBoard chessBoard, String move, Color defender) {
+        if(MoveList.isCapture(chessBoard, move) || MoveList.isPromotion(move)) {
+            return false;
+        }
+        return !inCheck(result(chessBoard, move), defender);
+    }
+
+    /**
+     * Set the margins of the shallow-depth pruning rules, in centipawns; a negative margin
+     * disables that rule
+     * @param futilityMargin how much a quiet move at the frontier may gain at most
+     * @param reverseFutilityMargin how much the static value may fall per remaining ply
+     * @param razorMargin how far below alpha the static value must be to razor into quiescence
+     */
+    public void setPruningMargins(int futilityMargin, int reverseFutilityMargin, int razorMargin) {
+        this.futilityMargin = futilityMargin;
+        this.reverseFutilityMargin = reverseFutilityMargin;
+        this.razorMargin = razorMargin;
+    }
+
     /**
      *
      * @param chessBoard the current state of the ChessBoard
@@ -286,40 +810,31 @@ public class QuiescentSolver extends ChessSolver implements Heuristic {
 
     /**
      * Heuristic function to determine the relative value of a ChessBoard
-     * @param chessBoard the ChessBoard to find the heuristic value of
-     * @return heuristic value; sum of the relative values of all pieces on the board
+     * @param chessBoard the ChessBoard to find the heuristic value of, with the current player to move
+     * @return heuristic value in centipawns, from the heuristic the solver evaluates with
      */
     @Override
     public int h(ChessBoard chessBoard) {
-        int hValue = 0;
-        ArrayList<ChessPiece> whitePieces = chessBoard.getWhitePieces();
-        ArrayList<ChessPiece> blackPieces = chessBoard.getBlackPieces();
-
-        for(ChessPiece piece : whitePieces) {
-            if(currentPlayer == Color.WHITE) {
-                hValue += piece.getValue();  // white pieces increase h-value for white player
-            } else {
-                hValue -= piece.getValue();  // black pieces decrease h-value for white player
-            }
-        }
-
-        for(ChessPiece piece : blackPieces) {
-            if(currentPlayer == Color.BLACK) {
-                hValue += piece.getValue();  // black pieces increase h-value for black player
-            } else {
-                hValue -= piece.getValue();  // white pieces decrease h-value for black player
-            }
-        }
-
-        return hValue;
+        reachedHorizon = true;
+        return evaluationCache.h(chessBoard);
     }
 
     /**
-     * Compute the allocated time for the turn based on how much time is left for the player
-     * @return player's time limit for the current turn
+     * Heuristic value of the board of the node being searched, looked up in the evaluation cache by the node's key
+     * @param chessBoard the board of the node being searched
+     * @return heuristic value in centipawns
      */
-    public double allocatedTurnTime() {
-        return timeRemaining * 0.02;  // 2% of the remaining time
+    private int evaluate(ChessBoard chessBoard) {
+        reachedHorizon = true;
+        long key = positions.getLatestKey();
+        long cached = evaluationCache.probe(key);
+        statistics.evaluationProbe(cached != 0);
+        if(cached != 0) {
+            return EvaluationCache.value(cached);
+        }
+        int value = heuristic.current(chessBoard);  // the solver's own heuristic, which has followed the line to this board
+        evaluationCache.store(key, value);
+        return value;
     }
 
     /**
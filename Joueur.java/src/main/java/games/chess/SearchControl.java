@@ -0,0 +1,92 @@
+package games.chess;
+
+/**
+ * Decides when a running search has to stop. The search calls shouldStop() at every node, but the clock is only read
+ * every CHECK_INTERVAL nodes; once the hard time limit passes, a volatile stop flag is raised. Other threads (the
+ * protocol thread, a ponderer, a parallel search) raise the same flag with stop() to end the search immediately
+ */
+public class SearchControl {
+
+    private static final int CHECK_INTERVAL = 1024;  // nodes between clock reads, a power of two
+
+    private TimeManager timeManager;  // supplies the hard limit, or null for a search without a time limit
+    private volatile boolean stopped;
+    private long nodes;  // nodes visited; only the searching thread counts them
+    private long nodeLimit = Long.MAX_VALUE;  // nodes after which the search stops
+    private boolean timed = true;  // whether the hard time limit applies
+
+    /**
+     * Constructor for a SearchControl
+     * @param timeManager decides when the search is out of time, or null if only stop() ends the search
+     */
+    public SearchControl(TimeManager timeManager) {
+        this.timeManager = timeManager;
+    }
+
+    /**
+     * Count a node and determine whether the search must stop, reading the clock every CHECK_INTERVAL nodes
+     * @return true once the search has been stopped or has run out of time
+     */
+    public boolean shouldStop() {
+        if(stopped) {
+            return true;
+        }
+        nodes++;
+        if(nodes >= nodeLimit) {
+            stopped = true;
+        } else if((nodes & (CHECK_INTERVAL - 1)) == 0 && isTimed() && timeManager.isTimeUp()) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    /**
+     * Determine whether the search has been stopped, without counting a node. Values returned by a search
+     * after it was stopped are incomplete and must be discarded
+     * @return true if the stop flag is raised
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Raise the stop flag; safe to call from any thread
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Stop the search after a fixed number of nodes instead of after the hard time limit. The search then
+     * does the same work on every run, whatever the machine's speed
+     * @param nodeLimit the number of nodes, or 0 for no limit
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit > 0 ? nodeLimit : Long.MAX_VALUE;
+    }
+
+    /**
+     * Set whether the hard time limit may stop the search, e.g. false for a search to a fixed depth
+     * @param timed false to let only stop() and the node limit end the search
+     */
+    public void setTimed(boolean timed) {
+        this.timed = timed;
+    }
+
+    /**
+     * Determine whether the clock can stop the search, which it cannot once a node limit is set
+     * @return true if the hard time limit applies
+     */
+    public boolean isTimed() {
+        return timed && timeManager != null && nodeLimit == Long.MAX_VALUE;
+    }
+
+    /**
+     * Getter for the number of nodes counted so far
+     * @return nodes counted by shouldStop()
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+}
@@ -0,0 +1,151 @@
+package games.chess;
+
+import java.util.Locale;
+
+/**
+ * Counters of what a search did, reported after every completed depth and at the end of the turn. Each
+ * solver owns its statistics and only its searching thread updates them, so the counters need no
+ * synchronization and cost one increment each
+ */
+public class SearchStatistics {
+
+    private long nodes;  // nodes within the depth limit
+    private long quiescenceNodes;  // nodes beyond the depth limit, where only captures are searched
+    private long ttProbes;
+    private long ttHits;
+    private long betaCutoffs;
+    private long firstMoveCutoffs;  // beta cutoffs caused by the first move searched
+    private long evaluationProbes;
+    private long evaluationHits;
+    private int selectiveDepth;  // deepest ply reached, including quiescence
+    private double startTime;  // System.nanoTime() when the search began
+    private long iterationStartNodes;  // nodes + quiescenceNodes when the current depth began
+    private long previousIterationNodes;  // nodes the previous depth took, 0 before the first
+
+    /**
+     * Reset every counter at the start of a search
+     */
+    public void searchStarted() {
+        nodes = 0;
+        quiescenceNodes = 0;
+        ttProbes = 0;
+        ttHits = 0;
+        betaCutoffs = 0;
+        firstMoveCutoffs = 0;
+        evaluationProbes = 0;
+        evaluationHits = 0;
+        selectiveDepth = 0;
+        startTime = System.nanoTime();
+        iterationStartNodes = 0;
+        previousIterationNodes = 0;
+    }
+
+    /**
+     * Mark the start of a depth of iterative deepening
+     */
+    public void iterationStarted() {
+        iterationStartNodes = totalNodes();
+    }
+
+    /**
+     * Count a node
+     * @param depth plies from the root
+     * @param depthLimit the depth limit of the current iteration
+     */
+    public void node(int depth, int depthLimit) {
+        if(depth < depthLimit) {
+            nodes++;
+        } else {
+            quiescenceNodes++;
+        }
+        selectiveDepth = Math.max(selectiveDepth, depth);
+    }
+
+    /**
+     * Count a transposition table lookup
+     * @param hit true if the table held the position
+     */
+    public void ttProbe(boolean hit) {
+        ttProbes++;
+        if(hit) {
+            ttHits++;
+        }
+    }
+
+    /**
+     * Count a lookup in the evaluation cache
+     * @param hit true if the cache held the board's value
+     */
+    public void evaluationProbe(boolean hit) {
+        evaluationProbes++;
+        if(hit) {
+            evaluationHits++;
+        }
+    }
+
+    /**
+     * Count a beta cutoff
+     * @param moveNumber how many moves the node had searched, including the one that caused the cutoff
+     */
+    public void betaCutoff(int moveNumber) {
+        betaCutoffs++;
+        if(moveNumber == 1) {
+            firstMoveCutoffs++;
+        }
+    }
+
+    /**
+     * Getter for the nodes visited so far, within and beyond the depth limit
+     * @return the node count
+     */
+    public long totalNodes() {
+        return nodes + quiescenceNodes;
+    }
+
+    /**
+     * Describe a completed depth, and remember its node count for the next depth's branching factor
+     * @param depth the depth limit that completed
+     * @param bestMove the best move it found
+     * @param value the value of that move
+     * @return one line of space separated name/value pairs
+     */
+    public String iterationCompleted(int depth, String bestMove, int value) {
+        long iterationNodes = totalNodes() - iterationStartNodes;
+        String branchingFactor = previousIterationNodes > 0
+                ? String.format(Locale.ROOT, "%.2f", (double)iterationNodes / previousIterationNodes) : "-";
+        previousIterationNodes = iterationNodes;
+        return "iteration depth " + depth + " " + counters() + " ebf " + branchingFactor
+                + " move " + bestMove + " value " + value;
+    }
+
+    /**
+     * Describe the whole search at the end of the turn
+     * @param depth the deepest depth limit that completed
+     * @param move the move chosen
+     * @return one line of space separated name/value pairs
+     */
+    public String turnCompleted(int depth, String move) {
+        return "turn depth " + depth + " " + counters() + " move " + move;
+    }
+
+    /**
+     * Format the counters shared by both kinds of line
+     */
+    private String counters() {
+        double elapsed = System.nanoTime() - startTime;
+        long nodesPerSecond = elapsed > 0 ? (long)(totalNodes() / (elapsed / 1e9)) : 0;
+        return "seldepth " + selectiveDepth + " nodes " + nodes + " qnodes " + quiescenceNodes
+                + " nps " + nodesPerSecond + " time " + (long)(elapsed / 1e6)
+                + " ttprobes " + ttProbes + " tthits " + ttHits + " hitrate " + share(ttHits, ttProbes)
+                + " cutoffs " + betaCutoffs + " firstmove " + share(firstMoveCutoffs, betaCutoffs)
+                + " evals " + evaluationProbes + " evalhitrate " + share(evaluationHits, evaluationProbes);
+    }
+
+    /**
+     * Format a ratio as a share between 0 and 1
+     */
+    private String share(long part, long whole) {
+        return whole > 0 ? String.format(Locale.ROOT, "%.3f", (double)part / whole) : "-";
+    }
+
+}
@@ -0,0 +1,105 @@
+package games.chess;
+
+import java.util.ArrayList;
+
+/**
+ * Command line report of how Lazy SMP scales: searches a set of positions with 1, 2, 4, ... threads
+ * and prints the time the main search needed to complete each depth, with the speedup over one thread
+ *
+ * Usage: java -cp target/classes games.chess.SmpScalingReport [maxThreads] [secondsPerSearch]
+ */
+public class SmpScalingReport {
+
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // test positions as UCI move sequences played from the starting position
+    private static final String[][] POSITIONS = {
+            {},
+            {"e2e4", "e7e5", "g1f3", "b8c6", "f1c4", "g8f6"},
+            {"d2d4", "d7d5", "c2c4", "e7e6", "b1c3", "g8f6", "c1g5", "f8e7"},
+            {"e2e4", "c7c5", "g1f3", "d7d6", "d2d4", "c5d4", "f3d4", "g8f6", "b1c3", "a7a6"},
+    };
+
+    /**
+     * Runs the report
+     * @param args optional maximum thread count (default 8) and seconds per search (default 10)
+     */
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 10;
+        double turnTime = seconds * 1e9;
+
+        ArrayList<Integer> threadCounts = new ArrayList<>();
+        for(int threads = 1; threads <= maxThreads; threads *= 2) {
+            threadCounts.add(threads);
+        }
+
+        System.out.println("Lazy SMP time-to-depth, " + seconds + "s per search, "
+                + Runtime.getRuntime().availableProcessors() + " available processors");
+        for(int position = 0; position < POSITIONS.length; position++) {
+            ArrayList<ArrayList<Double>> timings = new ArrayList<>();
+            for(int threads : threadCounts) {
+                timings.add(search(POSITIONS[position], threads, turnTime));
+            }
+            printPosition(position, threadCounts, timings);
+        }
+    }
+
+    /**
+     * Search one position with a fresh history and transposition table
+     * @param moves UCI moves leading from the starting position to the test position
+     * @param threads total number of search threads
+     * @param turnTime fixed time the search may take
+     * @return nanoseconds until each depth completed
+     */
+    private static ArrayList<Double> search(String[] moves, int threads, double turnTime) {
+        ChessBoard chessBoard = new ChessBoard(START_FEN);
+        Color currentPlayer = Color.WHITE;
+        for(String move : moves) {
+            chessBoard.detectCaptures(move);
+            chessBoard.movePiece(move);
+            currentPlayer = currentPlayer == Color.WHITE ? Color.BLACK : Color.WHITE;
+        }
+        chessBoard.updateAttackedTiles(currentPlayer);
+
+        LazySmpSolver solver = new LazySmpSolver(chessBoard, currentPlayer, new TimeManager(turnTime), new HistoryTable(), new TranspositionTable(), threads);
+        solver.setReplayHistory(false);
+        solver.computeBestMove();
+        return solver.getIterationTimes();
+    }
+
+    /**
+     * Print a table of time-to-depth in milliseconds, followed by the speedup at the deepest depth all runs reached
+     */
+    private static void printPosition(int position, ArrayList<Integer> threadCounts, ArrayList<ArrayList<Double>> timings) {
+        int commonDepth = Integer.MAX_VALUE;
+        int maxDepth = 0;
+        for(ArrayList<Double> timing : timings) {
+            commonDepth = Math.min(commonDepth, timing.size());
+            maxDepth = Math.max(maxDepth, timing.size());
+        }
+
+        System.out.println();
+        System.out.println("position " + (position + 1));
+        StringBuilder header = new StringBuilder(String.format("%8s", "threads"));
+        for(int depth = 1; depth <= maxDepth; depth++) {
+            header.append(String.format("%10s", "d" + depth));
+        }
+        header.append(String.format("%10s", "speedup"));
+        System.out.println(header);
+
+        for(int i = 0; i < threadCounts.size(); i++) {
+            ArrayList<Double> timing = timings.get(i);
+            StringBuilder row = new StringBuilder(String.format("%8d", threadCounts.get(i)));
+            for(int depth = 1; depth <= maxDepth; depth++) {
+                row.append(depth <= timing.size() ? String.format("%10.1f", timing.get(depth - 1) / 1e6) : String.format("%10s", "-"));
+            }
+            if(commonDepth > 0) {
+                double speedup = timings.get(0).get(commonDepth - 1) / timing.get(commonDepth - 1);
+                row.append(String.format("%9.2fx", speedup));
+            }
+            System.out.println(row);
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+package games.chess;
+
+import games.chess.pieces.*;
+
+/**
+ * Static exchange evaluation (SEE): plays out the sequence of captures on a single tile, each side
+ * always recapturing with its least valuable attacker, to find the material a capture wins or loses.
+ * Attackers hidden behind sliding pieces (x-rays) join the exchange once the pieces in front of them are used
+ */
+public class StaticExchange {
+
+    private static final int KING_VALUE = 1000;  // the king can only take last, as nothing may recapture it
+    private static final int MAX_EXCHANGES = 32;
+
+    private static final int[][] KNIGHT_OFFSETS = {{1, -2}, {2, -1}, {2, 1}, {1, 2}, {-1, 2}, {-2, 1}, {-2, -1}, {-1, -2}};
+    private static final int[][] KING_OFFSETS = {{1, -1}, {1, 0}, {1, 1}, {0, -1}, {0, 1}, {-1, -1}, {-1, 0}, {-1, 1}};
+    private static final int[][] ROOK_DIRECTIONS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+    private static final int[][] BISHOP_DIRECTIONS = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+    private ChessBoard chessBoard;
+    private boolean[][] removed;  // tiles whose pieces have already been used in the exchange, indexed [row - 1][col - 'a']
+
+    /**
+     * Constructor for a StaticExchange on a board, which is read but never modified
+     * @param chessBoard the board the exchange takes place on
+     */
+    private StaticExchange(ChessBoard chessBoard) {
+        this.chessBoard = chessBoard;
+        this.removed = new boolean[8][8];
+    }
+
+    /**
+     * Compute the static exchange value of a move
+     * @param chessBoard the board the move is made on
+     * @param move the move in UCI notation
+     * @return material won (positive) or lost (negative) by the moving side, in units of ChessPiece.getValue()
+     */
+    public static int see(ChessBoard chessBoard, String move) {
+        return new StaticExchange(chessBoard).evaluate(move);
+    }
+
+    /**
+     * Determine whether a tile is attacked by any piece of a color
+     * @param chessBoard the board to look at
+     * @param boardTile the tile in UCI notation, e.g. "e4"
+     * @param color the color of the attacking pieces
+     * @return true if at least one piece of that color attacks the tile
+     */
+    public static boolean isAttacked(ChessBoard chessBoard, String boardTile, Color color) {
+        int row = chessBoard.getRow(boardTile);
+        char col = chessBoard.getCol(boardTile);
+        return new StaticExchange(chessBoard).leastValuableAttacker(row, col, color) != null;
+    }
+
+    /**
+     * Play out the exchange on the destination tile of a move using a swap list
+     * @param move the move in UCI notation
+     * @return material won or lost by the moving side
+     */
+    private int evaluate(String move) {
+        int fromRow = chessBoard.getRow(move.substring(0, 2));
+        char fromCol = chessBoard.getCol(move.substring(0, 2));
+        int toRow = chessBoard.getRow(move.substring(2, 4));
+        char toCol = chessBoard.getCol(move.substring(2, 4));
+
+        ChessPiece mover = chessBoard.at(fromRow, fromCol);
+        ChessPiece victim = chessBoard.at(toRow, toCol);
+
+        int[] gain = new int[MAX_EXCHANGES];
+        gain[0] = victim == null ? 0 : victim.getValue();
+        int onTile = exchangeValue(mover);  // value of the piece standing on the tile, next to be captured
+        if(MoveList.isPromotion(move)) {
+            int promotedValue = chessBoard.getPieceFromFEN(move.charAt(4), 1, 'a').getValue();
+            gain[0] += promotedValue - mover.getValue();
+            onTile = promotedValue;
+        }
+        removed[fromRow - 1][fromCol - 'a'] = true;
+
+        Color side = mover.getColor() == Color.WHITE ? Color.BLACK : Color.WHITE;
+        int exchanges = 0;
+        while(exchanges + 1 < MAX_EXCHANGES) {
+            ChessPiece attacker = leastValuableAttacker(toRow, toCol, side);
+            if(attacker == null) {
+                break;  // nothing left to recapture with
+            }
+            exchanges++;
+            gain[exchanges] = onTile - gain[exchanges - 1];  // speculative score if the capture is made
+            if(Math.max(-gain[exchanges - 1], gain[exchanges]) < 0) {
+                break;  // neither side can improve by continuing the exchange
+            }
+            onTile = exchangeValue(attacker);
+            removed[attacker.rowPosition - 1][attacker.colPosition - 'a'] = true;
+            side = side == Color.WHITE ? Color.BLACK : Color.WHITE;
+        }
+
+        while(exchanges > 0) {  // each side may stop capturing whenever continuing would lose material
+            gain[exchanges - 1] = -Math.max(-gain[exchanges - 1], gain[exchanges]);
+            exchanges--;
+        }
+        return gain[0];
+    }
+
+    /**
+     * Find the cheapest piece of a color that attacks a tile, ignoring pieces already used in the exchange
+     * @param row the row of the tile, 1-8
+     * @param col the column of the tile, a-h
+     * @param color the color of the attacking pieces
+     * @return the least valuable attacker, or null if the tile is not attacked
+     */
+    private ChessPiece leastValuableAttacker(int row, char col, Color color) {
+        ChessPiece best = null;
+
+        int pawnRow = color == Color.WHITE ? row - 1 : row + 1;  // pawns attack toward the opponent
+        best = cheaper(best, pieceAt(pawnRow, (char)(col - 1), color, Pawn.class));
+        best = cheaper(best, pieceAt(pawnRow, (char)(col + 1), color, Pawn.class));
+
+        for(int[] offset : KNIGHT_OFFSETS) {
+            best = cheaper(best, pieceAt(row + offset[0], (char)(col + offset[1]), color, Knight.class));
+        }
+
+        for(int[] direction : BISHOP_DIRECTIONS) {
+            ChessPiece slider = firstPieceAlong(row, col, direction, color);
+            if(slider instanceof Bishop || slider instanceof Queen) {
+                best = cheaper(best, slider);
+            }
+        }
+
+        for(int[] direction : ROOK_DIRECTIONS) {
+            ChessPiece slider = firstPieceAlong(row, col, direction, color);
+            if(slider instanceof Rook || slider instanceof Queen) {
+                best = cheaper(best, slider);
+            }
+        }
+
+        for(int[] offset : KING_OFFSETS) {
+            best = cheaper(best, pieceAt(row + offset[0], (char)(col + offset[1]), color, King.class));
+        }
+
+        return best;
+    }
+
+    /**
+     * Walk from a tile in one direction to the first piece that has not been used in the exchange
+     * @return that piece if it has the given color, otherwise null
+     */
+    private ChessPiece firstPieceAlong(int row, char col, int[] direction, Color color) {
+        int r = row + direction[0];
+        char c = (char)(col + direction[1]);
+        while(chessBoard.tileExists(r, c)) {
+            if(!removed[r - 1][c - 'a'] && !chessBoard.isEmpty(r, c)) {
+                ChessPiece piece = chessBoard.at(r, c);
+                return piece.getColor() == color ? piece : null;
+            }
+            r += direction[0];
+            c += direction[1];
+        }
+        return null;
+    }
+
+    /**
+     * Look up an unused piece of a given color and type on a tile
+     * @return the piece, or null if the tile is off the board, empty, used, or holds a different piece
+     */
+    private ChessPiece pieceAt(int row, char col, Color color, Class<? extends ChessPiece> type) {
+        if(!chessBoard.tileExists(row, col) || removed[row - 1][col - 'a']) {
+            return null;
+        }
+        ChessPiece piece = chessBoard.at(row, col);
+        if(piece == null || piece.getColor() != color || !type.isInstance(piece)) {
+            return null;
+        }
+        return piece;
+    }
+
+    /**
+     * Pick the less valuable of two candidate attackers
+     * @return the cheaper piece, ignoring null candidates
+     */
+    private ChessPiece cheaper(ChessPiece current, ChessPiece candidate) {
+        if(candidate == null) {
+            return current;
+        }
+        if(current == null || exchangeValue(candidate) < exchangeValue(current)) {
+            return candidate;
+        }
+        return current;
+    }
+
+    /**
+     * Value of a piece when it is captured in the exchange
+     * @param piece the piece
+     * @return the piece's relative value, with the king valued above everything else
+     */
+    private int exchangeValue(ChessPiece piece) {
+        return piece instanceof King ? KING_VALUE : piece.getValue();
+    }
+
+}
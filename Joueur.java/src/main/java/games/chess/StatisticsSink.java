@@ -0,0 +1,14 @@
+package games.chess;
+
+/**
+ * Receives the statistics lines a search reports, one per completed depth and one per turn
+ */
+public interface StatisticsSink {
+
+    /**
+     * Handle one line of statistics
+     * @param line space separated name/value pairs, starting with "iteration" or "turn"
+     */
+    void report(String line);
+
+}
@@ -0,0 +1,164 @@
+package games.chess;
+
+/**
+ * Command line check of the Syzygy probing code against a directory of real tables. It probes textbook positions
+ * whose results are known, then compares the WDL value of every legal KPvK, KRvK and KQvK position, with either
+ * color as the stronger side, to the engine's own bitbases, which are generated by retrograde analysis and share no
+ * code with the Syzygy reader. Wherever a DTZ table is present, DTZ must agree in sign with WDL. Every mismatch is
+ * printed; tables that are missing are reported and skipped.
+ *
+ * Usage: java -cp target/classes games.chess.SyzygyCheck tablebaseDirectory
+ */
+public class SyzygyCheck {
+
+    private static final int MAX_PRINTED = 10;  // mismatches printed per table, after which they are only counted
+
+    // FEN, WDL for the side to move, and DTZ where it is known exactly (empty where only its sign is)
+    private static final String[][] POSITIONS = {
+            {"k7/7P/8/8/8/8/8/K7 w - - 0 1", "2", "1"},  // the pawn promotes at once
+            {"k7/7P/8/8/8/8/8/K7 b - - 0 1", "-2", "-2"},  // and black cannot stop it
+            {"4k3/8/4K3/4P3/8/8/8/8 w - - 0 1", "2", ""},  // the king in front of its pawn wins either way
+            {"4k3/8/4K3/4P3/8/8/8/8 b - - 0 1", "-2", ""},
+            {"8/4k3/8/4K3/4P3/8/8/8 w - - 0 1", "0", "0"},  // black has the opposition
+            {"8/4k3/8/4K3/4P3/8/8/8 b - - 0 1", "-2", ""},  // white has it
+            {"k7/8/K7/P7/8/8/8/8 w - - 0 1", "0", "0"},  // a rook pawn cannot drive the king from the corner
+            {"k7/1Q6/1K6/8/8/8/8/8 b - - 0 1", "-2", ""},  // checkmate
+            {"k7/2Q5/1K6/8/8/8/8/8 b - - 0 1", "0", "0"},  // stalemate
+            {"8/8/8/4k3/8/8/8/R3K3 w - - 0 1", "2", ""},
+            {"8/8/8/4k3/8/8/8/R3K3 b - - 0 1", "-2", ""},
+            {"8/8/8/4k3/8/8/8/2B1K3 w - - 0 1", "0", "0"},  // a lone minor piece cannot mate
+            {"8/8/8/4k3/8/8/8/1N2K3 w - - 0 1", "0", "0"},
+            {"8/8/8/4k3/8/8/8/1NB1K3 w - - 0 1", "2", ""},
+            {"8/8/8/4k3/8/8/8/1NB1K3 b - - 0 1", "-2", ""},
+            {"8/8/8/4k3/8/8/8/1N2KN2 w - - 0 1", "0", "0"},  // two knights cannot force mate
+            {"8/8/8/3k4/8/8/6r1/KQ6 w - - 0 1", "2", ""},
+            {"8/8/8/4k3/8/8/8/QQ2K3 w - - 0 1", "2", ""},
+            {"8/8/8/4k3/8/8/8/QQ2K3 b - - 0 1", "-2", ""},
+    };
+
+    /**
+     * Runs the check
+     * @param args the directory holding the .rtbw and .rtbz files
+     */
+    public static void main(String[] args) {
+        if(args.length < 1) {
+            System.out.println("Usage: SyzygyCheck tablebaseDirectory");
+            return;
+        }
+        SyzygyTablebase tablebase = new SyzygyTablebase(args[0]);
+
+        int mismatches = checkPositions(tablebase);
+        mismatches += checkAgainstBitbase(tablebase, Bitbase.PAWN);
+        mismatches += checkAgainstBitbase(tablebase, Bitbase.ROOK);
+        mismatches += checkAgainstBitbase(tablebase, Bitbase.QUEEN);
+        System.out.println(mismatches == 0 ? "All probes agree" : mismatches + " mismatches");
+    }
+
+    /**
+     * Probe the textbook positions
+     * @param tablebase the tables to check
+     * @return the number of mismatches
+     */
+    private static int checkPositions(SyzygyTablebase tablebase) {
+        int mismatches = 0;
+        for(String[] position : POSITIONS) {
+            ChessBoard chessBoard = new ChessBoard(position[0]);
+            Color sideToMove = position[0].contains(" w ") ? Color.WHITE : Color.BLACK;
+            int expectedWdl = Integer.parseInt(position[1]);
+            int wdl = tablebase.probeWdl(chessBoard, sideToMove);
+            if(wdl == SyzygyTablebase.NO_RESULT) {
+                System.out.println("no table   " + position[0]);
+                continue;
+            }
+            int dtz = tablebase.probeDtz(chessBoard, sideToMove);
+            boolean dtzAgrees = dtz == SyzygyTablebase.NO_RESULT || (position[2].isEmpty()
+                    ? Integer.signum(dtz) == Integer.signum(expectedWdl) : dtz == Integer.parseInt(position[2]));
+            boolean agrees = wdl == expectedWdl && dtzAgrees;
+            if(!agrees) {
+                mismatches++;
+            }
+            System.out.println((agrees ? "ok         " : "MISMATCH   ") + position[0] + "  wdl " + wdl + " (expected "
+                    + expectedWdl + ")  dtz " + (dtz == SyzygyTablebase.NO_RESULT ? "none" : dtz)
+                    + (position[2].isEmpty() ? "" : " (expected " + position[2] + ")"));
+        }
+        return mismatches;
+    }
+
+    /**
+     * Compare every legal position of king and piece against king with the bitbase for it
+     * @param tablebase the tables to check
+     * @param piece PAWN, ROOK or QUEEN
+     * @return the number of mismatches
+     */
+    private static int checkAgainstBitbase(SyzygyTablebase tablebase, char piece) {
+        String name = "K" + piece + "vK";
+        if(tablebase.probeWdl(board(piece, 4, 60, 19, false), Color.WHITE) == SyzygyTablebase.NO_RESULT) {
+            System.out.println(name + ": no table");
+            return 0;
+        }
+        Bitbase bitbase = Bitbase.generate(piece, Runtime.getRuntime().availableProcessors());
+
+        int checked = 0;
+        int mismatches = 0;
+        for(int whiteKing = 0; whiteKing < 64; whiteKing++) {
+            for(int blackKing = 0; blackKing < 64; blackKing++) {
+                for(int pieceTile = 0; pieceTile < 64; pieceTile++) {
+                    if(whiteKing == blackKing || whiteKing == pieceTile || blackKing == pieceTile
+                            || Bitbase.distance(whiteKing, blackKing) <= 1) {
+                        continue;
+                    }
+                    if(piece == Bitbase.PAWN && (pieceTile / 8 == 0 || pieceTile / 8 == 7)) {
+                        continue;
+                    }
+                    for(int side = 0; side < 2; side++) {
+                        boolean strongerToMove = side == 0;
+                        boolean win = bitbase.isWin(strongerToMove, whiteKing, blackKing, pieceTile);
+                        int expected = !win ? 0 : strongerToMove ? 2 : -2;
+                        for(int mirror = 0; mirror < 2; mirror++) {  // the tables store black as the stronger side by flipping
+                            boolean mirrored = mirror == 1;
+                            ChessBoard chessBoard = board(piece, whiteKing, blackKing, pieceTile, mirrored);
+                            Color stronger = mirrored ? Color.BLACK : Color.WHITE;
+                            Color weaker = mirrored ? Color.WHITE : Color.BLACK;
+                            String weakerKing = mirrored ? chessBoard.getWhiteKingPosition() : chessBoard.getBlackKingPosition();
+                            if(strongerToMove && StaticExchange.isAttacked(chessBoard, weakerKing, stronger)) {
+                                continue;  // the side not to move is in check
+                            }
+                            Color sideToMove = strongerToMove ? stronger : weaker;
+                            int wdl = tablebase.probeWdl(chessBoard, sideToMove);
+                            int dtz = tablebase.probeDtz(chessBoard, sideToMove);
+                            checked++;
+                            boolean dtzAgrees = dtz == SyzygyTablebase.NO_RESULT || Integer.signum(dtz) == Integer.signum(expected);
+                            if(wdl != expected || !dtzAgrees) {
+                                if(++mismatches <= MAX_PRINTED) {
+                                    System.out.println("MISMATCH   " + chessBoard + " " + (sideToMove == Color.WHITE ? "w" : "b")
+                                            + "  wdl " + wdl + " dtz " + dtz + " (bitbase " + expected + ")");
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println(name + ": " + checked + " positions, " + mismatches + " mismatches");
+        return mismatches;
+    }
+
+    /**
+     * Build a position of king and piece against king
+     * @param piece PAWN, ROOK or QUEEN
+     * @param whiteKing tile of the stronger side's king, from white's side of the board
+     * @param blackKing tile of the lone king
+     * @param pieceTile tile of the piece
+     * @param mirrored true to flip the board top to bottom and swap the colors, making black the stronger side
+     */
+    private static ChessBoard board(char piece, int whiteKing, int blackKing, int pieceTile, boolean mirrored) {
+        int flip = mirrored ? 56 : 0;
+        byte[] pieces = {
+                (byte)(whiteKing ^ flip), (byte)(mirrored ? 'k' : 'K'),
+                (byte)(pieceTile ^ flip), (byte)(mirrored ? Character.toLowerCase(piece) : piece),
+                (byte)(blackKing ^ flip), (byte)(mirrored ? 'K' : 'k'),
+        };
+        return new ChessBoard(pieces, 0, pieces.length);
+    }
+
+}
@@ -0,0 +1,801 @@
+package games.chess;
+
+import games.chess.pieces.*;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * One Syzygy tablebase file for one material balance, such as KRvK: either WDL (.rtbw, win/draw/loss under the
+ * fifty-move rule) or DTZ (.rtbz, distance to the next capture or pawn move). The layout follows the reference
+ * probing code shipped with the tables.
+ *
+ * A position is turned into an index by normalizing it with the board's symmetries and counting the placements of
+ * each group of like pieces. The values are stored in blocks compressed with a canonical Huffman code over symbols
+ * that each expand to a run of values ("recursive pairing"). The file is memory-mapped on the first probe and only
+ * the block holding the index is decoded, so a probe touches a few pages however large the table is
+ */
+public class SyzygyTable {
+
+    public static final int FAIL = Integer.MIN_VALUE;  // the file is missing, unreadable or malformed
+    public static final int CHANGE_SIDE = Integer.MIN_VALUE + 1;  // a DTZ table that only stores the other side to move
+
+    private static final int[] WDL_MAGIC = {0x71, 0xe8, 0x23, 0x5d};
+    private static final int[] DTZ_MAGIC = {0xd7, 0x66, 0x0c, 0xa5};
+
+    private static final int SPLIT = 1;  // file flags: the two sides to move are stored separately
+    private static final int HAS_PAWNS = 2;
+
+    private static final int STM = 1;  // table flags: the side to move a DTZ table stores
+    private static final int MAPPED = 2;  // DTZ values go through a value map
+    private static final int WIN_PLIES = 4;  // DTZ of wins is in plies rather than moves
+    private static final int LOSS_PLIES = 8;
+    private static final int WIDE = 16;  // the value map holds 16-bit values
+    private static final int SINGLE_VALUE = 128;  // every position has the same value and no blocks are stored
+
+    private static final int BLACK = 8;  // added to a piece code: white pawn 1, knight 2 ... king 6
+    private static final int[] WDL_MAP = {1, 3, 0, 2, 0};  // DTZ value map per WDL value, from loss to win
+
+    // encodings of normalized squares, built once from the board's symmetries
+    private static final int[] MAP_PAWNS = new int[64];
+    private static final int[] MAP_B1H1H7 = new int[64];
+    private static final int[] MAP_A1D1D4 = new int[64];
+    private static final int[][] MAP_KK = new int[10][64];
+    private static final long[][] BINOMIAL = new long[7][64];
+    private static final int[][] LEAD_PAWN_INDEX = new int[6][64];
+    private static final int[][] LEAD_PAWNS_SIZE = new int[6][4];
+
+    static {
+        initEncoding();
+    }
+
+    private String path;
+    private boolean dtz;
+    private int pieceCount;
+    private boolean hasPawns;
+    private boolean hasUniquePieces;  // some piece other than a king is alone of its kind and color
+    private boolean symmetric;  // both sides have the same pieces, e.g. KRvKR
+    private int[] pawnCount = new int[2];  // pawns of the leading color, then of the other
+
+    private volatile boolean initialized;
+    private MappedByteBuffer data;  // null if the file could not be mapped
+    private PairsData[][] tables;  // [side to move][file of the leading pawn]
+    private int dtzMap;  // offset of the DTZ value maps
+
+    /**
+     * Compression parameters of one table: the piece order, the index layout and the Huffman code
+     */
+    private static class PairsData {
+        int flags;
+        int maxSymLen;
+        int minSymLen;  // holds the value itself for a SINGLE_VALUE table
+        int numBlocks;
+        int blockSize;
+        long span;  // about one sparse index entry every span values
+        int lowestSym;  // offset of the lowest symbol of each length
+        int btree;  // offset of the pairs each symbol expands to
+        int blockLength;  // offset of the number of values (minus one) in each block
+        int blockLengthSize;
+        int sparseIndex;  // offset of the sparse index entries: block (4 bytes) and offset in the block (2)
+        int sparseIndexSize;
+        int blocks;  // offset of the first compressed block
+        long[] base64;  // lowest symbol of each length, left-aligned in 64 bits
+        int[] symlen;  // number of values (minus one) each symbol expands to
+        int[] pieces = new int[8];
+        long[] groupIdx = new long[8];
+        int[] groupLen = new int[8];
+        int[] mapIdx = new int[4];
+    }
+
+    /**
+     * Constructor for a SyzygyTable; the file is not opened until the first probe
+     * @param name the material balance, strongest side first, e.g. "KRPvKR"
+     * @param path the file holding the table
+     * @param dtz true for a DTZ table, false for a WDL table
+     */
+    public SyzygyTable(String name, String path, boolean dtz) {
+        this.path = path;
+        this.dtz = dtz;
+
+        String white = name.substring(0, name.indexOf('v'));
+        String black = name.substring(name.indexOf('v') + 1);
+        pieceCount = white.length() + black.length();
+        hasPawns = name.indexOf('P') >= 0;
+        symmetric = white.equals(black);
+        for(String side : new String[] {white, black}) {
+            for(char piece : "QRBNP".toCharArray()) {
+                if(side.indexOf(piece) >= 0 && side.indexOf(piece) == side.lastIndexOf(piece)) {
+                    hasUniquePieces = true;
+                }
+            }
+        }
+
+        // the side with fewer pawns leads, since that compresses better
+        int whitePawns = count(white, 'P');
+        int blackPawns = count(black, 'P');
+        boolean whiteLeads = blackPawns == 0 || (whitePawns > 0 && blackPawns >= whitePawns);
+        pawnCount[0] = whiteLeads ? whitePawns : blackPawns;
+        pawnCount[1] = whiteLeads ? blackPawns : whitePawns;
+    }
+
+    /**
+     * Look up a position
+     * @param chessBoard the board, with the pieces of this table
+     * @param sideToMove the color of the player to move
+     * @param blackStronger true if black has the pieces named first in the table
+     * @param wdl for a DTZ table, the position's WDL value, which selects the value map
+     * @return the WDL value (-2 loss ... 2 win) or DTZ in plies for the side to move, CHANGE_SIDE or FAIL
+     */
+    public int probe(ChessBoard chessBoard, Color sideToMove, boolean blackStronger, int wdl) {
+        if(!initialized) {
+            initialize();
+        }
+        if(data == null) {
+            return FAIL;
+        }
+
+        // the tables are for the named side as white, and store only white to move when both sides are the same
+        boolean flip = blackStronger || (symmetric && sideToMove == Color.BLACK);
+        int flipColor = flip ? BLACK : 0;
+        int flipSquares = flip ? 56 : 0;
+        int stm = (flip ? 1 : 0) ^ (sideToMove == Color.BLACK ? 1 : 0);
+
+        int[] squares = new int[pieceCount];
+        int[] pieces = new int[pieceCount];
+        int size = 0;
+        int leadPawnsCount = 0;
+        int leadPawn = 0;
+        int tbFile = 0;
+        if(hasPawns) {
+            // pawns of the leading color come first; the one furthest toward the edge and back decides the table
+            leadPawn = tables[0][0].pieces[0] ^ flipColor;
+            for(int square = 0; square < 64; square++) {
+                if(pieceCode(chessBoard, square) == leadPawn) {
+                    squares[size++] = square ^ flipSquares;
+                }
+            }
+            leadPawnsCount = size;
+            int lead = 0;
+            for(int i = 1; i < leadPawnsCount; i++) {
+                if(MAP_PAWNS[squares[i]] > MAP_PAWNS[squares[lead]]) {
+                    lead = i;
+                }
+            }
+            swap(squares, 0, lead);
+            tbFile = Math.min(squares[0] & 7, (squares[0] ^ 7) & 7);
+        }
+
+        if(dtz && (tables[0][tbFile].flags & STM) != stm && !(symmetric && !hasPawns)) {
+            return CHANGE_SIDE;  // DTZ tables store one side to move only
+        }
+
+        for(int square = 0; square < 64; square++) {
+            int code = pieceCode(chessBoard, square);
+            if(code != 0 && !(hasPawns && code == leadPawn)) {
+                squares[size] = square ^ flipSquares;
+                pieces[size++] = code ^ flipColor;
+            }
+        }
+
+        PairsData d = tables[dtz ? 0 : stm % tables.length][tbFile];
+
+        // put the pieces in the order the table groups them
+        for(int i = leadPawnsCount; i < size - 1; i++) {
+            for(int j = i + 1; j < size; j++) {
+                if(d.pieces[i] == pieces[j]) {
+                    swap(pieces, i, j);
+                    swap(squares, i, j);
+                    break;
+                }
+            }
+        }
+
+        if((squares[0] & 7) > 3) {  // mirror so the leading piece is on files a-d
+            for(int i = 0; i < size; i++) {
+                squares[i] ^= 7;
+            }
+        }
+
+        long index;
+        if(hasPawns) {
+            index = LEAD_PAWN_INDEX[leadPawnsCount][squares[0]];
+            sortByPawnMap(squares, 1, leadPawnsCount);
+            for(int i = 1; i < leadPawnsCount; i++) {
+                index += BINOMIAL[i][MAP_PAWNS[squares[i]]];
+            }
+        } else {
+            index = leadingGroupIndex(d, squares);
+        }
+
+        // the remaining groups, each as a combination of the squares the earlier groups leave free
+        index *= d.groupIdx[0];
+        int groupStart = d.groupLen[0];
+        boolean remainingPawns = hasPawns && pawnCount[1] > 0;
+        for(int next = 1; d.groupLen[next] != 0; next++) {
+            Arrays.sort(squares, groupStart, groupStart + d.groupLen[next]);
+            long combination = 0;
+            for(int i = 0; i < d.groupLen[next]; i++) {
+                int square = squares[groupStart + i];
+                int adjust = 0;
+                for(int j = 0; j < groupStart; j++) {
+                    if(square > squares[j]) {
+                        adjust++;
+                    }
+                }
+                combination += BINOMIAL[i + 1][square - adjust - (remainingPawns ? 8 : 0)];
+            }
+            remainingPawns = false;
+            index += combination * d.groupIdx[next];
+            groupStart += d.groupLen[next];
+        }
+
+        int value = decompress(d, index);
+        return dtz ? mapDtz(tbFile, value, wdl) : value - 2;
+    }
+
+    /**
+     * Index of the leading group of a table without pawns, after mirroring the leading piece into the a1-d1-d4
+     * triangle and the first piece off the long diagonal below it
+     * @param d the table
+     * @param squares the squares in the table's piece order, mirrored in place
+     * @return index of the leading group
+     */
+    private long leadingGroupIndex(PairsData d, int[] squares) {
+        if((squares[0] >> 3) > 3) {
+            for(int i = 0; i < pieceCount; i++) {
+                squares[i] ^= 56;
+            }
+        }
+        for(int i = 0; i < d.groupLen[0]; i++) {
+            if(offDiagonal(squares[i]) == 0) {
+                continue;
+            }
+            if(offDiagonal(squares[i]) > 0) {  // mirror in the a1-h8 diagonal
+                for(int j = i; j < pieceCount; j++) {
+                    squares[j] = ((squares[j] >> 3) | (squares[j] << 3)) & 63;
+                }
+            }
+            break;
+        }
+
+        if(!hasUniquePieces) {
+            return MAP_KK[MAP_A1D1D4[squares[0]]][squares[1]];  // the two kings together
+        }
+        int adjust1 = squares[1] > squares[0] ? 1 : 0;
+        int adjust2 = (squares[2] > squares[0] ? 1 : 0) + (squares[2] > squares[1] ? 1 : 0);
+        if(offDiagonal(squares[0]) != 0) {
+            return (MAP_A1D1D4[squares[0]] * 63 + (squares[1] - adjust1)) * 62 + squares[2] - adjust2;
+        } else if(offDiagonal(squares[1]) != 0) {
+            return (6 * 63 + (squares[0] >> 3) * 28 + MAP_B1H1H7[squares[1]]) * 62 + squares[2] - adjust2;
+        } else if(offDiagonal(squares[2]) != 0) {
+            return 6 * 63 * 62 + 4 * 28 * 62 + (squares[0] >> 3) * 7 * 28
+                    + ((squares[1] >> 3) - adjust1) * 28 + MAP_B1H1H7[squares[2]];
+        } else {
+            return 6 * 63 * 62 + 4 * 28 * 62 + 4 * 7 * 28 + (squares[0] >> 3) * 7 * 6
+                    + ((squares[1] >> 3) - adjust1) * 6 + ((squares[2] >> 3) - adjust2);
+        }
+    }
+
+    /**
+     * Decode the value at an index: find its block through the sparse index, then walk the block's Huffman
+     * symbols and expand the one holding the index
+     * @param d the table
+     * @param index the position's index
+     * @return the stored value
+     */
+    private int decompress(PairsData d, long index) {
+        if((d.flags & SINGLE_VALUE) != 0) {
+            return d.minSymLen;
+        }
+
+        // sparse entry k describes the value at k * span + span / 2
+        int k = (int)(index / d.span);
+        int block = data.getInt(d.sparseIndex + 6 * k);
+        int offset = data.getShort(d.sparseIndex + 6 * k + 4) & 0xffff;
+        offset += (int)(index % d.span - d.span / 2);
+        while(offset < 0) {
+            offset += blockLength(d, --block) + 1;
+        }
+        while(offset > blockLength(d, block)) {
+            offset -= blockLength(d, block++) + 1;
+        }
+
+        int position = d.blocks + block * d.blockSize;
+        long buffer = bigEndianLong(position);
+        position += 8;
+        int bufferSize = 64;
+        int symbol;
+        while(true) {
+            int length = 0;  // symbol length minus minSymLen
+            while(buffer + Long.MIN_VALUE < d.base64[length] + Long.MIN_VALUE) {  // unsigned comparison
+                length++;
+            }
+            symbol = (int)((buffer - d.base64[length]) >>> (64 - length - d.minSymLen));
+            symbol = (symbol + lowestSymbol(d, length)) & 0xffff;
+            if(offset < d.symlen[symbol] + 1) {
+                break;
+            }
+            offset -= d.symlen[symbol] + 1;
+            length += d.minSymLen;
+            buffer <<= length;
+            bufferSize -= length;
+            if(bufferSize <= 32) {  // refill
+                bufferSize += 32;
+                buffer |= (bigEndianInt(position) & 0xffffffffL) << (64 - bufferSize);
+                position += 4;
+            }
+        }
+
+        while(d.symlen[symbol] != 0) {  // expand pairs down to the single value
+            int left = leftSymbol(d, symbol);
+            if(offset < d.symlen[left] + 1) {
+                symbol = left;
+            } else {
+                offset -= d.symlen[left] + 1;
+                symbol = rightSymbol(d, symbol);
+            }
+        }
+        return leftSymbol(d, symbol);
+    }
+
+    /**
+     * Convert a stored DTZ value to plies
+     * @param tbFile the file of the leading pawn, 0 without pawns
+     * @param value the stored value
+     * @param wdl the position's WDL value
+     * @return distance to zeroing in plies, plus one
+     */
+    private int mapDtz(int tbFile, int value, int wdl) {
+        PairsData d = tables[0][tbFile];
+        if((d.flags & MAPPED) != 0) {
+            int map = d.mapIdx[WDL_MAP[wdl + 2]];
+            value = (d.flags & WIDE) != 0 ? data.getShort(dtzMap + 2 * (map + value)) & 0xffff : unsignedByte(dtzMap + map + value);
+        }
+        if((wdl == 2 && (d.flags & WIN_PLIES) == 0) || (wdl == -2 && (d.flags & LOSS_PLIES) == 0) || wdl == 1 || wdl == -1) {
+            value *= 2;  // stored in moves
+        }
+        return value + 1;
+    }
+
+    /**
+     * Map the file and read the table headers, once; on failure every probe returns FAIL
+     */
+    private synchronized void initialize() {
+        if(initialized) {
+            return;
+        }
+        try(FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("too large to map");
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            readHeaders();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not read the tablebase " + path + ": " + e.getMessage());
+            data = null;
+        }
+        initialized = true;
+    }
+
+    /**
+     * Read the piece orders, index layouts and Huffman codes of every table in the file
+     * @throws IOException if the file does not match its name
+     */
+    private void readHeaders() throws IOException {
+        int[] magic = dtz ? DTZ_MAGIC : WDL_MAGIC;
+        for(int i = 0; i < magic.length; i++) {
+            if(unsignedByte(i) != magic[i]) {
+                throw new IOException("not a Syzygy " + (dtz ? "DTZ" : "WDL") + " file");
+            }
+        }
+        int offset = magic.length;
+        int fileFlags = unsignedByte(offset++);
+        if(((fileFlags & HAS_PAWNS) != 0) != hasPawns || ((fileFlags & SPLIT) != 0) != !symmetric) {
+            throw new IOException("material does not match the file name");
+        }
+
+        int sides = !dtz && !symmetric ? 2 : 1;
+        int files = hasPawns ? 4 : 1;
+        boolean pawnsOnBothSides = hasPawns && pawnCount[1] > 0;
+        tables = new PairsData[sides][files];
+        for(int f = 0; f < files; f++) {
+            for(int i = 0; i < sides; i++) {
+                tables[i][f] = new PairsData();
+            }
+            int[][] order = {
+                    {unsignedByte(offset) & 0xf, pawnsOnBothSides ? unsignedByte(offset + 1) & 0xf : 0xf},
+                    {unsignedByte(offset) >> 4, pawnsOnBothSides ? unsignedByte(offset + 1) >> 4 : 0xf}};
+            offset += pawnsOnBothSides ? 2 : 1;
+            for(int k = 0; k < pieceCount; k++, offset++) {
+                for(int i = 0; i < sides; i++) {
+                    tables[i][f].pieces[k] = i == 0 ? unsignedByte(offset) & 0xf : unsignedByte(offset) >> 4;
+                }
+            }
+            for(int i = 0; i < sides; i++) {
+                setGroups(tables[i][f], order[i], f);
+            }
+        }
+        offset += offset & 1;
+
+        for(int f = 0; f < files; f++) {
+            for(int i = 0; i < sides; i++) {
+                offset = setSizes(tables[i][f], offset);
+            }
+        }
+        if(dtz) {
+            offset = setDtzMap(offset, files);
+        }
+        for(int f = 0; f < files; f++) {
+            for(int i = 0; i < sides; i++) {
+                tables[i][f].sparseIndex = offset;
+                offset += tables[i][f].sparseIndexSize * 6;
+            }
+        }
+        for(int f = 0; f < files; f++) {
+            for(int i = 0; i < sides; i++) {
+                tables[i][f].blockLength = offset;
+                offset += tables[i][f].blockLengthSize * 2;
+            }
+        }
+        for(int f = 0; f < files; f++) {
+            for(int i = 0; i < sides; i++) {
+                offset = (offset + 0x3f) & ~0x3f;  // blocks start on 64-byte boundaries
+                tables[i][f].blocks = offset;
+                offset += tables[i][f].numBlocks * tables[i][f].blockSize;
+            }
+        }
+    }
+
+    /**
+     * Split the pieces into groups of like pieces and compute the size of each group's part of the index
+     * @param d the table
+     * @param order encoding order of the leading group and of the remaining pawns
+     * @param f file of the leading pawn, 0 without pawns
+     */
+    private void setGroups(PairsData d, int[] order, int f) {
+        int n = 0;
+        int firstLen = hasPawns ? 0 : hasUniquePieces ? 3 : 2;
+        d.groupLen[n] = 1;
+        for(int i = 1; i < pieceCount; i++) {
+            if(--firstLen > 0 || d.pieces[i] == d.pieces[i - 1]) {
+                d.groupLen[n]++;  // still in the leading group, or the same kind as the previous piece
+            } else {
+                d.groupLen[++n] = 1;
+            }
+        }
+        d.groupLen[++n] = 0;
+
+        boolean pawnsOnBothSides = hasPawns && pawnCount[1] > 0;
+        int next = pawnsOnBothSides ? 2 : 1;
+        int freeSquares = 64 - d.groupLen[0] - (pawnsOnBothSides ? d.groupLen[1] : 0);
+        long index = 1;
+        for(int k = 0; next < n || k == order[0] || k == order[1]; k++) {
+            if(k == order[0]) {  // leading pawns or pieces
+                d.groupIdx[0] = index;
+                index *= hasPawns ? LEAD_PAWNS_SIZE[d.groupLen[0]][f] : hasUniquePieces ? 31332 : 462;
+            } else if(k == order[1]) {  // remaining pawns
+                d.groupIdx[1] = index;
+                index *= BINOMIAL[d.groupLen[1]][48 - d.groupLen[0]];
+            } else {  // remaining pieces
+                d.groupIdx[next] = index;
+                index *= BINOMIAL[d.groupLen[next]][freeSquares];
+                freeSquares -= d.groupLen[next++];
+            }
+        }
+        d.groupIdx[n] = index;
+    }
+
+    /**
+     * Read a table's block layout and Huffman code
+     * @param d the table
+     * @param offset where its description starts
+     * @return where the next description starts
+     */
+    private int setSizes(PairsData d, int offset) {
+        d.flags = unsignedByte(offset++);
+        if((d.flags & SINGLE_VALUE) != 0) {
+            d.minSymLen = unsignedByte(offset++);
+            return offset;
+        }
+
+        int groups = 0;
+        while(d.groupLen[groups] != 0) {
+            groups++;
+        }
+        long tableSize = d.groupIdx[groups];
+
+        d.blockSize = 1 << unsignedByte(offset++);
+        d.span = 1L << unsignedByte(offset++);
+        d.sparseIndexSize = (int)((tableSize + d.span - 1) / d.span);
+        int padding = unsignedByte(offset++);
+        d.numBlocks = data.getInt(offset);
+        offset += 4;
+        d.blockLengthSize = d.numBlocks + padding;  // padded so the sparse index never points past the end
+        d.maxSymLen = unsignedByte(offset++);
+        d.minSymLen = unsignedByte(offset++);
+        d.lowestSym = offset;
+
+        // longer symbols have lower values, so base64[] decreases with length and finds a symbol's length
+        d.base64 = new long[d.maxSymLen - d.minSymLen + 1];
+        for(int i = d.base64.length - 2; i >= 0; i--) {
+            d.base64[i] = (d.base64[i + 1] + lowestSymbol(d, i) - lowestSymbol(d, i + 1)) >>> 1;
+        }
+        for(int i = 0; i < d.base64.length; i++) {
+            d.base64[i] <<= 64 - i - d.minSymLen;
+        }
+        offset += d.base64.length * 2;
+
+        int symbols = data.getShort(offset) & 0xffff;
+        offset += 2;
+        d.btree = offset;
+        d.symlen = new int[symbols];
+        boolean[] visited = new boolean[symbols];
+        for(int symbol = 0; symbol < symbols; symbol++) {
+            if(!visited[symbol]) {
+                d.symlen[symbol] = setSymlen(d, symbol, visited);
+            }
+        }
+        return offset + symbols * 3 + (symbols & 1);
+    }
+
+    /**
+     * Count the values a symbol expands to, minus one, by expanding its pairs
+     * @param d the table
+     * @param symbol the symbol
+     * @param visited symbols already counted
+     * @return the symbol's length in values, minus one
+     */
+    private int setSymlen(PairsData d, int symbol, boolean[] visited) {
+        visited[symbol] = true;
+        int right = rightSymbol(d, symbol);
+        if(right == 0xfff) {
+            return 0;  // a single value
+        }
+        int left = leftSymbol(d, symbol);
+        if(!visited[left]) {
+            d.symlen[left] = setSymlen(d, left, visited);
+        }
+        if(!visited[right]) {
+            d.symlen[right] = setSymlen(d, right, visited);
+        }
+        return d.symlen[left] + d.symlen[right] + 1;
+    }
+
+    /**
+     * Locate the value maps of a DTZ file
+     * @param offset where the maps start
+     * @param files number of tables, one per file of the leading pawn
+     * @return where the sparse indexes start
+     */
+    private int setDtzMap(int offset, int files) {
+        dtzMap = offset;
+        for(int f = 0; f < files; f++) {
+            PairsData d = tables[0][f];
+            if((d.flags & MAPPED) == 0) {
+                continue;
+            }
+            if((d.flags & WIDE) != 0) {
+                offset += offset & 1;
+                for(int i = 0; i < 4; i++) {
+                    d.mapIdx[i] = (offset - dtzMap) / 2 + 1;
+                    offset += 2 * (data.getShort(offset) & 0xffff) + 2;
+                }
+            } else {
+                for(int i = 0; i < 4; i++) {
+                    d.mapIdx[i] = offset - dtzMap + 1;
+                    offset += unsignedByte(offset) + 1;
+                }
+            }
+        }
+        return offset + (offset & 1);
+    }
+
+    /**
+     * Build the square encodings shared by every table
+     */
+    private static void initEncoding() {
+        int code = 0;
+        for(int square = 0; square < 64; square++) {
+            if(offDiagonal(square) < 0) {
+                MAP_B1H1H7[square] = code++;
+            }
+        }
+
+        // the a1-d1-d4 triangle below the diagonal first, then the diagonal itself
+        code = 0;
+        int[] diagonal = new int[4];
+        int diagonalCount = 0;
+        for(int square = 0; square <= 27; square++) {
+            if(offDiagonal(square) < 0 && (square & 7) <= 3) {
+                MAP_A1D1D4[square] = code++;
+            } else if(offDiagonal(square) == 0 && (square & 7) <= 3) {
+                diagonal[diagonalCount++] = square;
+            }
+        }
+        for(int i = 0; i < diagonalCount; i++) {
+            MAP_A1D1D4[diagonal[i]] = code++;
+        }
+
+        // the 462 legal placements of two kings with the first in the triangle, both on the diagonal last
+        code = 0;
+        int[][] bothOnDiagonal = new int[64][2];
+        int bothCount = 0;
+        for(int index = 0; index < 10; index++) {
+            for(int first = 0; first <= 27; first++) {
+                if(MAP_A1D1D4[first] != index || (index == 0 && first != 1)) {
+                    continue;  // b1 is the only square encoded as 0
+                }
+                for(int second = 0; second < 64; second++) {
+                    if(Bitbase.distance(first, second) <= 1) {
+                        continue;  // the kings touch
+                    } else if(offDiagonal(first) == 0 && offDiagonal(second) > 0) {
+                        continue;  // mirrored below the diagonal instead
+                    } else if(offDiagonal(first) == 0 && offDiagonal(second) == 0) {
+                        bothOnDiagonal[bothCount][0] = index;
+                        bothOnDiagonal[bothCount++][1] = second;
+                    } else {
+                        MAP_KK[index][second] = code++;
+                    }
+                }
+            }
+        }
+        for(int i = 0; i < bothCount; i++) {
+            MAP_KK[bothOnDiagonal[i][0]][bothOnDiagonal[i][1]] = code++;
+        }
+
+        BINOMIAL[0][0] = 1;
+        for(int n = 1; n < 64; n++) {
+            for(int k = 0; k < BINOMIAL.length && k <= n; k++) {
+                BINOMIAL[k][n] = (k > 0 ? BINOMIAL[k - 1][n - 1] : 0) + (k < n ? BINOMIAL[k][n - 1] : 0);
+            }
+        }
+
+        // pawns on a2-h7 from the edge files inward and from rank 2 up; the highest code leads
+        int available = 47;
+        for(int leadPawns = 1; leadPawns < LEAD_PAWN_INDEX.length; leadPawns++) {
+            for(int file = 0; file < 4; file++) {
+                int index = 0;
+                for(int rank = 1; rank <= 6; rank++) {
+                    int square = rank * 8 + file;
+                    if(leadPawns == 1) {
+                        MAP_PAWNS[square] = available--;
+                        MAP_PAWNS[square ^ 7] = available--;
+                    }
+                    LEAD_PAWN_INDEX[leadPawns][square] = index;
+                    index += BINOMIAL[leadPawns - 1][MAP_PAWNS[square]];
+                }
+                LEAD_PAWNS_SIZE[leadPawns][file] = index;
+            }
+        }
+    }
+
+    /**
+     * Code of the piece on a square as the files write it
+     * @param chessBoard the board
+     * @param square the square, 0-63 from a1 to h8
+     * @return 1-6 for a white pawn to king, 9-14 for black, 0 for an empty square
+     */
+    private static int pieceCode(ChessBoard chessBoard, int square) {
+        ChessPiece piece = chessBoard.at(square / 8 + 1, (char)('a' + square % 8));
+        if(piece == null) {
+            return 0;
+        }
+        int code;
+        if(piece instanceof Pawn) {
+            code = 1;
+        } else if(piece instanceof Knight) {
+            code = 2;
+        } else if(piece instanceof Bishop) {
+            code = 3;
+        } else if(piece instanceof Rook) {
+            code = 4;
+        } else if(piece instanceof Queen) {
+            code = 5;
+        } else {
+            code = 6;
+        }
+        return piece.getColor() == Color.WHITE ? code : code + BLACK;
+    }
+
+    /**
+     * Stable insertion sort of a range of pawn squares by their pawn encoding
+     */
+    private static void sortByPawnMap(int[] squares, int from, int to) {
+        for(int i = from + 1; i < to; i++) {
+            int square = squares[i];
+            int j = i;
+            while(j > from && MAP_PAWNS[squares[j - 1]] > MAP_PAWNS[square]) {
+                squares[j] = squares[j - 1];
+                j--;
+            }
+            squares[j] = square;
+        }
+    }
+
+    /**
+     * Distance of a square above the a1-h8 diagonal, negative below it
+     */
+    private static int offDiagonal(int square) {
+        return (square >> 3) - (square & 7);
+    }
+
+    /**
+     * Count one kind of piece in a side of a table name
+     */
+    private static int count(String pieces, char piece) {
+        int count = 0;
+        for(char c : pieces.toCharArray()) {
+            if(c == piece) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Exchange two entries of an array
+     */
+    private static void swap(int[] values, int i, int j) {
+        int value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    /**
+     * Read a byte of the file as 0-255
+     */
+    private int unsignedByte(int offset) {
+        return data.get(offset) & 0xff;
+    }
+
+    /**
+     * Number of values in a block, minus one
+     */
+    private int blockLength(PairsData d, int block) {
+        return data.getShort(d.blockLength + 2 * block) & 0xffff;
+    }
+
+    /**
+     * Lowest symbol of a length, counted from minSymLen
+     */
+    private int lowestSymbol(PairsData d, int length) {
+        return data.getShort(d.lowestSym + 2 * length) & 0xffff;
+    }
+
+    /**
+     * First symbol of the pair a symbol expands to, or the value of a single-value symbol
+     */
+    private int leftSymbol(PairsData d, int symbol) {
+        int offset = d.btree + 3 * symbol;
+        return ((unsignedByte(offset + 1) & 0xf) << 8) | unsignedByte(offset);
+    }
+
+    /**
+     * Second symbol of the pair a symbol expands to, 0xfff for a single-value symbol
+     */
+    private int rightSymbol(PairsData d, int symbol) {
+        int offset = d.btree + 3 * symbol;
+        return (unsignedByte(offset + 2) << 4) | (unsignedByte(offset + 1) >> 4);
+    }
+
+    /**
+     * Read 32 bits of compressed data, which is big-endian unlike the headers
+     */
+    private int bigEndianInt(int offset) {
+        return offset + 4 <= data.limit() ? Integer.reverseBytes(data.getInt(offset)) : 0;  // the last block may end early
+    }
+
+    /**
+     * Read 64 bits of compressed data
+     */
+    private long bigEndianLong(int offset) {
+        return ((long)bigEndianInt(offset) << 32) | (bigEndianInt(offset + 4) & 0xffffffffL);
+    }
+
+}
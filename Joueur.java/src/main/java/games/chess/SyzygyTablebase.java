@@ -0,0 +1,407 @@
+package games.chess;
+
+import games.chess.pieces.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Syzygy tablebases in a local directory: WDL files (.rtbw) score positions in the search, and DTZ files (.rtbz)
+ * rank the moves at the root so that a won endgame is converted before the fifty-move rule draws it.
+ *
+ * The tables leave out positions where a capture is the best move, so every probe first searches the captures
+ * (and, for DTZ, the pawn moves) and looks the position up only if none of them is already best
+ */
+public class SyzygyTablebase {
+
+    public static final int NO_RESULT = Bitbases.NO_RESULT;  // the position is not covered by any table
+
+    private static final int WIN = 2;  // WDL values, from the side to move's point of view
+    private static final int CURSED_WIN = 1;  // won, but only after the fifty-move rule would draw
+    private static final int DRAW = 0;
+    private static final int BLESSED_LOSS = -1;
+    private static final int LOSS = -2;
+    private static final int[] WDL_RANK = {-1000, -899, 0, 899, 1000};  // root rank by WDL when DTZ is missing
+
+    private HashMap<String, SyzygyTable> wdlTables = new HashMap<>();  // by name, e.g. "KRvK"
+    private HashMap<String, SyzygyTable> dtzTables = new HashMap<>();
+    private int maxPieces;  // most pieces in any WDL table
+
+    /**
+     * Outcome of a probe besides its value
+     */
+    private static class ProbeState {
+        boolean failed;  // a table was missing or unreadable
+        boolean zeroingBest;  // a capture or pawn move is best, so the stored value does not apply
+        boolean changeSide;  // the DTZ table stores the other side to move
+    }
+
+    /**
+     * Constructor for a SyzygyTablebase, finds the tables in a directory; files are mapped on first use
+     * @param directory the directory holding .rtbw and .rtbz files
+     */
+    public SyzygyTablebase(String directory) {
+        File[] files = new File(directory).listFiles();
+        if(files == null) {
+            System.out.println("No tablebase directory " + directory);
+            return;
+        }
+        for(File file : files) {
+            String fileName = file.getName();
+            int dot = fileName.lastIndexOf('.');
+            String name = dot < 0 ? fileName : fileName.substring(0, dot);
+            if(!name.matches("K[QRBNP]*vK[QRBNP]*")) {
+                continue;
+            }
+            if(fileName.endsWith(".rtbw")) {
+                wdlTables.put(name, new SyzygyTable(name, file.getPath(), false));
+                maxPieces = Math.max(maxPieces, name.length() - 1);
+            } else if(fileName.endsWith(".rtbz")) {
+                dtzTables.put(name, new SyzygyTable(name, file.getPath(), true));
+            }
+        }
+        System.out.println("Found " + wdlTables.size() + " WDL and " + dtzTables.size() + " DTZ tables for up to " + maxPieces + " pieces");
+    }
+
+    /**
+     * Getter for the most pieces any table covers
+     * @return the piece count, kings included, or 0 if there are no tables
+     */
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * Score a board for the search from the WDL tables. Cursed wins and blessed losses score as draws, since the
+     * fifty-move rule decides them
+     * @param chessBoard the board
+     * @param sideToMove the color of the player to move
+     * @param perspective the color whose point of view the score takes
+     * @return Bitbases.KNOWN_WIN for a win, its negation for a loss, 0 for a draw, or NO_RESULT if no table covers the board
+     */
+    public int probe(ChessBoard chessBoard, Color sideToMove, Color perspective) {
+        if(pieceCount(chessBoard) > maxPieces) {
+            return NO_RESULT;
+        }
+        int wdl = probeWdl(chessBoard, sideToMove);
+        if(wdl == NO_RESULT) {
+            return NO_RESULT;
+        }
+        int score = wdl == WIN ? Bitbases.KNOWN_WIN : wdl == LOSS ? -Bitbases.KNOWN_WIN : 0;
+        return perspective == sideToMove ? score : -score;
+    }
+
+    /**
+     * Look up the win/draw/loss value of a board
+     * @param chessBoard the board
+     * @param sideToMove the color of the player to move
+     * @return -2 loss, -1 blessed loss, 0 draw, 1 cursed win or 2 win for the side to move, or NO_RESULT
+     */
+    public int probeWdl(ChessBoard chessBoard, Color sideToMove) {
+        ProbeState state = new ProbeState();
+        int wdl = search(chessBoard, sideToMove, false, state);
+        return state.failed ? NO_RESULT : wdl;
+    }
+
+    /**
+     * Look up the distance to zeroing of a board: the plies until the next capture or pawn move under best play
+     * @param chessBoard the board
+     * @param sideToMove the color of the player to move
+     * @return the distance, positive for a win and negative for a loss (over 100 if the fifty-move rule decides it),
+     *         0 for a draw, or NO_RESULT
+     */
+    public int probeDtz(ChessBoard chessBoard, Color sideToMove) {
+        ProbeState state = new ProbeState();
+        int dtz = dtz(chessBoard, sideToMove, state);
+        return state.failed ? NO_RESULT : dtz;
+    }
+
+    /**
+     * Keep only the root moves that best preserve the result: the fastest conversion of a win, any move that holds a
+     * draw, or the longest resistance in a loss. Moves are ranked by DTZ, or by WDL alone when DTZ tables are missing
+     * @param chessBoard the board
+     * @param sideToMove the color of the player to move
+     * @return the best-ranked legal moves in UCI notation, or null if the tables do not cover the board
+     */
+    public ArrayList<String> rankRootMoves(ChessBoard chessBoard, Color sideToMove) {
+        if(pieceCount(chessBoard) > maxPieces) {
+            return null;
+        }
+        ArrayList<String> moves = chessBoard.findAllMoves(sideToMove);
+        int[] ranks = dtzRanks(chessBoard, sideToMove, moves);
+        if(ranks == null) {
+            ranks = wdlRanks(chessBoard, sideToMove, moves);
+        }
+        if(ranks == null || moves.isEmpty()) {
+            return null;
+        }
+
+        int bestRank = Integer.MIN_VALUE;
+        for(int rank : ranks) {
+            bestRank = Math.max(bestRank, rank);
+        }
+        ArrayList<String> bestMoves = new ArrayList<>();
+        for(int i = 0; i < moves.size(); i++) {
+            if(ranks[i] == bestRank) {
+                bestMoves.add(moves.get(i));
+            }
+        }
+        return bestMoves;
+    }
+
+    /**
+     * Rank root moves by the DTZ they lead to: shorter wins and longer losses rank higher
+     * @return a rank per move, or null if a table is missing
+     */
+    private int[] dtzRanks(ChessBoard chessBoard, Color sideToMove, ArrayList<String> moves) {
+        int[] ranks = new int[moves.size()];
+        Color opponent = opponent(sideToMove);
+        for(int i = 0; i < moves.size(); i++) {
+            String move = moves.get(i);
+            ChessBoard next = play(chessBoard, move);
+            ProbeState state = new ProbeState();
+            int dtz;
+            if(MoveList.isZeroing(chessBoard, move)) {
+                dtz = dtzBeforeZeroing(-search(next, opponent, false, state));  // the move itself resets the count
+            } else {
+                dtz = -dtz(next, opponent, state);
+                dtz = dtz > 0 ? dtz + 1 : dtz < 0 ? dtz - 1 : 0;  // one ply more from the root
+            }
+            if(dtz == 2 && isCheckmate(next, opponent)) {
+                dtz = 1;
+            }
+            if(state.failed) {
+                return null;
+            }
+            ranks[i] = dtz > 0 ? 1000 - dtz : dtz < 0 ? -1000 - dtz : 0;
+        }
+        return ranks;
+    }
+
+    /**
+     * Rank root moves by the WDL value they lead to
+     * @return a rank per move, or null if a table is missing
+     */
+    private int[] wdlRanks(ChessBoard chessBoard, Color sideToMove, ArrayList<String> moves) {
+        int[] ranks = new int[moves.size()];
+        for(int i = 0; i < moves.size(); i++) {
+            int wdl = probeWdl(play(chessBoard, moves.get(i)), opponent(sideToMove));
+            if(wdl == NO_RESULT) {
+                return null;
+            }
+            ranks[i] = WDL_RANK[-wdl + 2];
+        }
+        return ranks;
+    }
+
+    /**
+     * WDL value of a board after resolving captures (and, when asked, pawn moves), which the tables leave out
+     * whenever one of them is best
+     * @param chessBoard the board
+     * @param sideToMove the color of the player to move
+     * @param checkZeroing whether pawn moves are resolved as well as captures, as DTZ requires
+     * @param state records a missing table, or that a capture or pawn move is best
+     * @return the WDL value for the side to move
+     */
+    private int search(ChessBoard chessBoard, Color sideToMove, boolean checkZeroing, ProbeState state) {
+        int bestValue = LOSS;
+        ArrayList<String> moves = chessBoard.findAllMoves(sideToMove);
+        int moveCount = 0;
+        for(String move : moves) {
+            if(!isCapture(chessBoard, move) && (!checkZeroing || !MoveList.isZeroing(chessBoard, move))) {
+                continue;
+            }
+            moveCount++;
+            int value = -search(play(chessBoard, move), opponent(sideToMove), false, state);
+            if(state.failed) {
+                return DRAW;
+            }
+            if(value > bestValue) {
+                bestValue = value;
+                if(value >= WIN) {
+                    state.zeroingBest = true;  // a winning capture or pawn move
+                    return value;
+                }
+            }
+        }
+
+        // with every legal move searched the table is not needed; it could even be wrong here
+        boolean noMoreMoves = moveCount > 0 && moveCount == moves.size();
+        int value;
+        if(noMoreMoves) {
+            value = bestValue;
+        } else {
+            value = probeTable(chessBoard, sideToMove, DRAW, false, state);
+            if(state.failed) {
+                return DRAW;
+            }
+        }
+
+        if(bestValue >= value) {  // the table stores a "don't care" value where a capture is at least as good
+            state.zeroingBest = bestValue > DRAW || noMoreMoves;
+            return bestValue;
+        }
+        state.zeroingBest = false;
+        return value;
+    }
+
+    /**
+     * Distance to zeroing of a board, searching one ply when the DTZ table only stores the other side to move
+     * @param chessBoard the board
+     * @param sideToMove the color of the player to move
+     * @param state records a missing table
+     * @return the distance in plies, signed as probeDtz()
+     */
+    private int dtz(ChessBoard chessBoard, Color sideToMove, ProbeState state) {
+        int wdl = search(chessBoard, sideToMove, true, state);
+        if(state.failed || wdl == DRAW) {
+            return 0;  // DTZ tables store no draws
+        }
+        if(state.zeroingBest) {
+            return dtzBeforeZeroing(wdl);
+        }
+
+        int dtz = probeTable(chessBoard, sideToMove, wdl, true, state);
+        if(state.failed) {
+            return 0;
+        }
+        if(!state.changeSide) {
+            return (dtz + (wdl == BLESSED_LOSS || wdl == CURSED_WIN ? 100 : 0)) * Integer.signum(wdl);
+        }
+
+        // find the move reaching the shortest DTZ for the other side to move
+        state.changeSide = false;
+        int minDtz = 0xffff;
+        for(String move : chessBoard.findAllMoves(sideToMove)) {
+            boolean zeroing = MoveList.isZeroing(chessBoard, move);
+            ChessBoard next = play(chessBoard, move);
+            int value = zeroing ? -dtzBeforeZeroing(search(next, opponent(sideToMove), false, state))
+                    : -dtz(next, opponent(sideToMove), state);
+            if(value == 1 && isCheckmate(next, opponent(sideToMove))) {
+                minDtz = 1;
+            }
+            if(!zeroing) {
+                value += Integer.signum(value);
+            }
+            if(value < minDtz && Integer.signum(value) == Integer.signum(wdl)) {
+                minDtz = value;
+            }
+            if(state.failed) {
+                return 0;
+            }
+        }
+        return minDtz == 0xffff ? -1 : minDtz;  // no legal moves: mated
+    }
+
+    /**
+     * Look a board up in its table
+     * @param chessBoard the board
+     * @param sideToMove the color of the player to move
+     * @param wdl the board's WDL value, for a DTZ lookup
+     * @param dtz true to use the DTZ tables, false for the WDL tables
+     * @param state records a missing table, or a DTZ table storing the other side to move
+     * @return the stored value, or 0 on failure
+     */
+    private int probeTable(ChessBoard chessBoard, Color sideToMove, int wdl, boolean dtz, ProbeState state) {
+        if(pieceCount(chessBoard) == 2) {
+            return DRAW;  // two bare kings
+        }
+        HashMap<String, SyzygyTable> tables = dtz ? dtzTables : wdlTables;
+        String white = material(chessBoard.getWhitePieces());
+        String black = material(chessBoard.getBlackPieces());
+        boolean blackStronger = false;
+        SyzygyTable table = tables.get(white + "v" + black);
+        if(table == null) {
+            table = tables.get(black + "v" + white);
+            blackStronger = true;
+        }
+        int value = table == null ? SyzygyTable.FAIL : table.probe(chessBoard, sideToMove, blackStronger, wdl);
+        if(value == SyzygyTable.FAIL) {
+            state.failed = true;
+            return 0;
+        }
+        if(value == SyzygyTable.CHANGE_SIDE) {
+            state.changeSide = true;
+            return 0;
+        }
+        return value;
+    }
+
+    /**
+     * DTZ of a position whose best move zeroes the count, so the distance is the move itself
+     */
+    private static int dtzBeforeZeroing(int wdl) {
+        switch(wdl) {
+            case WIN:
+                return 1;
+            case CURSED_WIN:
+                return 101;
+            case BLESSED_LOSS:
+                return -101;
+            case LOSS:
+                return -1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Name one side's pieces as the table files do, e.g. "KRP"
+     * @param pieces the side's pieces, king included
+     * @return the pieces from king to pawn
+     */
+    private static String material(ArrayList<ChessPiece> pieces) {
+        StringBuilder material = new StringBuilder("K");
+        Class<?>[] kinds = {Queen.class, Rook.class, Bishop.class, Knight.class, Pawn.class};
+        String symbols = "QRBNP";
+        for(int i = 0; i < kinds.length; i++) {
+            for(ChessPiece piece : pieces) {
+                if(kinds[i].isInstance(piece)) {
+                    material.append(symbols.charAt(i));
+                }
+            }
+        }
+        return material.toString();
+    }
+
+    /**
+     * Count the pieces on a board, kings included
+     */
+    private static int pieceCount(ChessBoard chessBoard) {
+        return chessBoard.getWhitePieces().size() + chessBoard.getBlackPieces().size();
+    }
+
+    /**
+     * Determine whether a move captures
+     */
+    private static boolean isCapture(ChessBoard chessBoard, String move) {
+        return chessBoard.at(move.substring(2, 4)) != null;
+    }
+
+    /**
+     * Determine whether the player to move is checkmated
+     */
+    private static boolean isCheckmate(ChessBoard chessBoard, Color sideToMove) {
+        String kingPosition = sideToMove == Color.WHITE ? chessBoard.getWhiteKingPosition() : chessBoard.getBlackKingPosition();
+        return StaticExchange.isAttacked(chessBoard, kingPosition, opponent(sideToMove)) && chessBoard.findAllMoves(sideToMove).isEmpty();
+    }
+
+    /**
+     * Compute the board after a move
+     */
+    private static ChessBoard play(ChessBoard chessBoard, String move) {
+        ChessBoard next = new ChessBoard(chessBoard);
+        next.detectCaptures(move);
+        next.movePiece(move);
+        return next;
+    }
+
+    /**
+     * Find the color that moves against the given color
+     */
+    private static Color opponent(Color color) {
+        return color == Color.WHITE ? Color.BLACK : Color.WHITE;
+    }
+
+}
@@ -0,0 +1,324 @@
+package games.chess;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Command line tuner for the EvaluationParameters, after the Texel method: the evaluation of each labeled position
+ * is mapped to an expected score with the logistic curve 1 / (1 + 10^(-K * value / 400)), and the parameters are
+ * moved one at a time, one step up or down, while that lowers the mean squared difference to the game results.
+ * Each parameter first tries the direction that last improved it. The step starts large and halves whenever a whole pass over the parameters finds no improvement.
+ *
+ * Positions are read from an EPD or FEN file, one per line, labeled with the result of the game they come from:
+ * "1-0", "0-1" or "1/2-1/2" (e.g. c9 "1-0";), or a white score in brackets such as [0.5]. They should be quiet,
+ * since they are scored statically. Each position's placement is parsed once, when it is read, and kept as two bytes
+ * per piece (see ChessBoard's constructor for stored pieces), so scoring never parses text. The positions are split
+ * into chunks that a ForkJoinPool scores in parallel, each chunk with its own heuristic. The parameters are
+ * written after every pass that improves them, so the file the engine loads is never more than a pass behind.
+ *
+ * Usage: java -cp target/classes games.chess.TexelTuner positionsFile parameterFile [startParameterFile] [threads]
+ */
+public class TexelTuner {
+
+    private static final int CHUNK_SIZE = 16384;  // positions scored by one task with one heuristic
+    private static final int INITIAL_STEP = 16;  // centipawns a parameter first moves by
+    private static final double MIN_SCALING = 0.1;  // the range the scaling constant K is fitted in
+    private static final double MAX_SCALING = 3.0;
+
+    private HeuristicFactory heuristicFactory;
+    private ForkJoinPool pool;
+    private byte[] pieces = new byte[65536];  // every position's pieces, a tile byte then a FEN symbol byte each
+    private int[] offsets = new int[1025];  // where each position's pieces start; offsets[size] is where they end
+    private byte[] results = new byte[1024];  // white's score in half points: 0 loss, 1 draw, 2 win
+    private int size;  // positions loaded
+    private double scaling = 1;  // K
+
+    /**
+     * Runs the tuner
+     * @param args the positions file, the parameter file to write, optionally a parameter file to start from and
+     *             the number of threads (default one per processor)
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.out.println("Usage: TexelTuner positionsFile parameterFile [startParameterFile] [threads]");
+            return;
+        }
+        EvaluationParameters start = args.length > 2 ? EvaluationParameters.load(args[2]) : new EvaluationParameters();
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        TexelTuner tuner = new TexelTuner(new HeuristicFactory() {
+            @Override
+            public Heuristic create(EvaluationParameters parameters) {
+                return new PositionalHeuristic(Color.WHITE, parameters);
+            }
+        }, threads);
+        long startTime = System.nanoTime();
+        int skipped = tuner.loadPositions(args[0]);
+        System.out.println("loaded " + tuner.size() + " positions, skipped " + skipped + " unlabeled lines");
+        double scaling = tuner.fitScaling(start);
+        System.out.println(String.format(Locale.ROOT, "scaling %.4f error %.6f", scaling, tuner.error(start)));
+        tuner.tune(start, args[1]);
+        System.out.println(String.format(Locale.ROOT, "done in %.1fs", (System.nanoTime() - startTime) / 1e9));
+    }
+
+    /**
+     * Constructor for a TexelTuner
+     * @param heuristicFactory builds the heuristic the positions are scored with, for white
+     * @param threads number of threads scoring positions
+     */
+    public TexelTuner(HeuristicFactory heuristicFactory, int threads) {
+        this.heuristicFactory = heuristicFactory;
+        this.pool = new ForkJoinPool(Math.max(1, threads));
+    }
+
+    /**
+     * Read labeled positions from a file, streaming it line by line
+     * @param path path of the EPD or FEN file
+     * @return number of lines skipped for having no FEN placement or no result
+     * @throws IOException if the file cannot be read
+     */
+    public int loadPositions(String path) throws IOException {
+        int skipped = 0;
+        try(BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                line = line.trim();
+                if(size == results.length) {
+                    results = Arrays.copyOf(results, results.length * 2);
+                    offsets = Arrays.copyOf(offsets, results.length + 1);
+                }
+                int space = line.indexOf(' ');
+                int result = parseResult(line);
+                if(space < 0 || result < 0 || !store(line.substring(0, space))) {
+                    skipped++;
+                    continue;
+                }
+                results[size++] = (byte)result;
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * Getter for the number of positions loaded
+     * @return the count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Fit the scaling constant K to the positions with golden-section search, and use it from now on
+     * @param parameters the parameters to score the positions with, usually the ones tuning starts from
+     * @return K
+     */
+    public double fitScaling(EvaluationParameters parameters) {
+        int[] values = evaluate(parameters);
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double low = MIN_SCALING;
+        double high = MAX_SCALING;
+        while(high - low > 1e-4) {
+            double left = high - ratio * (high - low);
+            double right = low + ratio * (high - low);
+            if(error(values, left) < error(values, right)) {
+                high = right;
+            } else {
+                low = left;
+            }
+        }
+        scaling = (low + high) / 2;
+        return scaling;
+    }
+
+    /**
+     * Mean squared difference between the game results and the scores the parameters predict
+     * @param parameters the parameters to score the positions with
+     * @return the error, between 0 and 1
+     */
+    public double error(EvaluationParameters parameters) {
+        return error(evaluate(parameters), scaling);
+    }
+
+    /**
+     * Tune the parameters by local search, writing them after every pass that improves them
+     * @param start the parameters to start from
+     * @param outputPath the parameter file to write
+     * @return the tuned parameters
+     * @throws IOException if the parameter file cannot be written
+     */
+    public EvaluationParameters tune(EvaluationParameters start, String outputPath) throws IOException {
+        EvaluationParameters best = new EvaluationParameters(start);
+        double bestError = error(best);
+        int[] directions = new int[best.size()];  // the direction to try first for each parameter
+        Arrays.fill(directions, 1);
+        int pass = 0;
+        for(int step = INITIAL_STEP; step >= 1; ) {
+            boolean improved = false;
+            for(int i = 0; i < best.size(); i++) {
+                for(int attempt = 0; attempt < 2; attempt++) {
+                    int direction = attempt == 0 ? directions[i] : -directions[i];
+                    EvaluationParameters candidate = new EvaluationParameters(best);
+                    candidate.set(i, best.get(i) + direction * step);
+                    double candidateError = error(candidate);
+                    if(candidateError < bestError) {
+                        best = candidate;
+                        bestError = candidateError;
+                        improved = true;
+                        directions[i] = direction;  // tried first on the next pass
+                        break;
+                    }
+                }
+            }
+            pass++;
+            System.out.println(String.format(Locale.ROOT, "pass %d step %d error %.6f", pass, step, bestError));
+            if(improved) {
+                best.save(outputPath, String.format(Locale.ROOT, "tuned on %d positions, error %.6f, scaling %.4f",
+                        size, bestError, scaling));
+            } else {
+                step /= 2;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Score every position for white in parallel
+     * @param parameters the parameters to score with
+     * @return the heuristic values, in the order the positions were read
+     */
+    private int[] evaluate(EvaluationParameters parameters) {
+        int[] values = new int[size];
+        pool.invoke(new EvaluationTask(parameters, values, 0, values.length));
+        return values;
+    }
+
+    /**
+     * Mean squared difference between the game results and the scores predicted from heuristic values
+     * @param values heuristic values of the positions for white
+     * @param scaling the constant K
+     * @return the error
+     */
+    private double error(int[] values, double scaling) {
+        double sum = 0;
+        for(int i = 0; i < values.length; i++) {
+            double expected = 1 / (1 + Math.pow(10, -scaling * values[i] / 400));
+            double difference = results[i] / 2.0 - expected;
+            sum += difference * difference;
+        }
+        return values.length == 0 ? 0 : sum / values.length;
+    }
+
+    /**
+     * Parse a FEN piece placement into the stored pieces, as the position after the last one loaded
+     * @param placement the placement, rank 8 first
+     * @return false, storing nothing, if the placement does not describe eight rows of eight tiles
+     */
+    private boolean store(String placement) {
+        if(pieces.length - offsets[size] < 128) {  // room for a full board
+            pieces = Arrays.copyOf(pieces, pieces.length * 2);
+        }
+        int end = offsets[size];
+        int row = 7;
+        int column = 0;
+        for(int i = 0; i < placement.length(); i++) {
+            char symbol = placement.charAt(i);
+            if(symbol == '/') {
+                if(column != 8 || row == 0) {
+                    return false;
+                }
+                row--;
+                column = 0;
+            } else if(symbol >= '1' && symbol <= '8') {
+                column += symbol - '0';
+            } else if("PNBRQKpnbrqk".indexOf(symbol) >= 0 && column < 8) {
+                pieces[end++] = (byte)(row * 8 + column);
+                pieces[end++] = (byte)symbol;
+                column++;
+            } else {
+                return false;
+            }
+            if(column > 8) {
+                return false;
+            }
+        }
+        if(row != 0 || column != 8) {
+            return false;
+        }
+        offsets[size + 1] = end;
+        return true;
+    }
+
+    /**
+     * Read the result label of a position line
+     * @param line the line
+     * @return white's score in half points, or -1 if the line has no label
+     */
+    private static int parseResult(String line) {
+        if(line.contains("1/2-1/2")) {
+            return 1;
+        } else if(line.contains("1-0")) {
+            return 2;
+        } else if(line.contains("0-1")) {
+            return 0;
+        }
+        int open = line.lastIndexOf('[');
+        int close = line.lastIndexOf(']');
+        if(open >= 0 && close > open) {
+            switch(line.substring(open + 1, close).trim()) {
+                case "1": case "1.0": return 2;
+                case "0.5": return 1;
+                case "0": case "0.0": return 0;
+                default: return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Scores a range of positions, splitting it in halves until it is one chunk
+     */
+    private class EvaluationTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final EvaluationParameters parameters;
+        private final int[] values;
+        private final int from;
+        private final int to;
+
+        /**
+         * Constructor for an EvaluationTask
+         * @param parameters the parameters to score with
+         * @param values where the values are written
+         * @param from the first position of the range
+         * @param to the position after the range
+         */
+        EvaluationTask(EvaluationParameters parameters, int[] values, int from, int to) {
+            this.parameters = parameters;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new EvaluationTask(parameters, values, from, middle), new EvaluationTask(parameters, values, middle, to));
+                return;
+            }
+            Heuristic heuristic = heuristicFactory.create(parameters);  // heuristics are not shared between threads
+            for(int i = from; i < to; i++) {
+                values[i] = heuristic.h(new ChessBoard(pieces, offsets[i], offsets[i + 1]));
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,170 @@
+package games.chess;
+
+/**
+ * Decides how long a turn may take. A soft limit is the time the turn should normally use; iterative deepening
+ * only starts a new depth if it is predicted to finish within it. The soft limit grows when the best move keeps
+ * changing or the score drops, and shrinks when the best move is stable. A hard limit, never more than a fixed
+ * share of the clock, aborts the search outright so the player cannot run out of time.
+ * All times are in nanoseconds, like Player.timeRemaining
+ */
+public class TimeManager {
+
+    public static final double UNLIMITED = 1e300;  // turn time for searches that run until they are stopped
+
+    private static final int EXPECTED_GAME_LENGTH = 60;  // moves per player the clock is planned to last
+    private static final int MIN_MOVES_TO_GO = 15;  // always plan for at least this many more moves
+    private static final double SAFETY_SHARE = 0.05;  // share of the clock that is never planned for
+    private static final double HARD_FACTOR = 4.0;  // the hard limit is at most this multiple of the soft limit
+    private static final double MAX_HARD_SHARE = 0.2;  // the hard limit is at most this share of the clock
+    private static final double MIN_BRANCHING_FACTOR = 1.5;  // bounds on the predicted growth of the next depth
+    private static final double MAX_BRANCHING_FACTOR = 10.0;
+    private static final double DEFAULT_BRANCHING_FACTOR = 4.0;  // used until two depths have completed
+    private static final int SCORE_DROP = Heuristic.PAWN;  // a fall in score this large means the position needs more time
+    private static final int STABLE_ITERATIONS = 4;  // depths with the same best move before the position counts as easy
+
+    private double softLimit;
+    private double hardLimit;
+    private double startTime;
+    private double lastIterationTime;  // duration of the latest completed depth, 0 before the first
+    private double previousIterationTime;  // duration of the depth before that, 0 before the second
+    private String lastBestMove;
+    private int lastScore;
+    private double bestMoveChanges;  // decaying count of how often the best move changed between depths
+    private int stableIterations;  // consecutive depths with the same best move
+    private boolean scoreDropped;  // whether the latest depth scored clearly worse than the one before
+
+    /**
+     * Constructor for a TimeManager that plans the turn from both players' clocks
+     * @param timeRemaining the player's remaining time
+     * @param opponentTimeRemaining the opponent's remaining time
+     * @param movesPlayed number of moves the player has already made this game
+     */
+    public TimeManager(double timeRemaining, double opponentTimeRemaining, int movesPlayed) {
+        double usableTime = timeRemaining * (1 - SAFETY_SHARE);
+        int movesToGo = Math.max(MIN_MOVES_TO_GO, EXPECTED_GAME_LENGTH - movesPlayed);
+
+        // spend a little more when ahead on the clock and a little less when behind
+        double clockRatio = opponentTimeRemaining > 0 ? timeRemaining / opponentTimeRemaining : 1;
+        double clockFactor = Math.max(0.7, Math.min(1.4, clockRatio));
+
+        hardLimit = Math.min(usableTime / movesToGo * clockFactor * HARD_FACTOR, usableTime * MAX_HARD_SHARE);
+        softLimit = Math.min(usableTime / movesToGo * clockFactor, hardLimit);
+    }
+
+    /**
+     * Constructor for a TimeManager with a fixed turn time, used for analysis and searches that are stopped externally
+     * @param turnTime the time the turn may take, both as soft and hard limit
+     */
+    public TimeManager(double turnTime) {
+        softLimit = turnTime;
+        hardLimit = turnTime;
+    }
+
+    /**
+     * Start the clock for this turn
+     */
+    public void start() {
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Getter for the time at which the turn started
+     * @return the System.nanoTime() value recorded by start()
+     */
+    public double getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Time used so far this turn
+     * @return nanoseconds since start()
+     */
+    public double elapsed() {
+        return System.nanoTime() - startTime;
+    }
+
+    /**
+     * Getter for the soft limit, the time a turn normally uses
+     * @return the soft limit in nanoseconds
+     */
+    public double getSoftLimit() {
+        return softLimit;
+    }
+
+    /**
+     * Getter for the hard limit, after which the search must be abandoned
+     * @return the hard limit in nanoseconds
+     */
+    public double getHardLimit() {
+        return hardLimit;
+    }
+
+    /**
+     * Determine whether the hard limit has passed
+     * @return true if the search must stop now
+     */
+    public boolean isTimeUp() {
+        return elapsed() > hardLimit;
+    }
+
+    /**
+     * Record a completed depth of iterative deepening
+     * @param bestMove the best move found at this depth
+     * @param score the value of the best move
+     * @param iterationTime how long the depth took
+     */
+    public void iterationCompleted(String bestMove, int score, double iterationTime) {
+        bestMoveChanges *= 0.5;  // older changes matter less
+        if(lastBestMove != null && !lastBestMove.equals(bestMove)) {
+            bestMoveChanges += 1;
+            stableIterations = 0;
+        } else {
+            stableIterations++;
+        }
+        scoreDropped = lastBestMove != null && lastScore - score >= SCORE_DROP;
+
+        lastBestMove = bestMove;
+        lastScore = score;
+        previousIterationTime = lastIterationTime;
+        lastIterationTime = iterationTime;
+    }
+
+    /**
+     * Determine whether the next depth of iterative deepening should start, predicting its duration from
+     * the growth between the last two depths
+     * @return true if the next depth is expected to finish within the adjusted soft limit
+     */
+    public boolean shouldStartIteration() {
+        double elapsedTime = elapsed();
+        double predictedTime = lastIterationTime * branchingFactor();
+        return elapsedTime + predictedTime <= adjustedSoftLimit();
+    }
+
+    /**
+     * Effective branching factor between the last two completed depths
+     * @return the ratio of the last depth's time to the one before, within sane bounds
+     */
+    private double branchingFactor() {
+        if(previousIterationTime <= 0) {
+            return DEFAULT_BRANCHING_FACTOR;
+        }
+        double ratio = lastIterationTime / previousIterationTime;
+        return Math.max(MIN_BRANCHING_FACTOR, Math.min(MAX_BRANCHING_FACTOR, ratio));
+    }
+
+    /**
+     * Scale the soft limit by how unsettled the search is, without passing the hard limit
+     * @return the soft limit for the current state of the search
+     */
+    private double adjustedSoftLimit() {
+        double factor = 1 + bestMoveChanges;  // the best move keeps changing, so look deeper
+        if(scoreDropped) {
+            factor *= 1.5;  // the position is getting worse, look for a way out
+        }
+        if(stableIterations >= STABLE_ITERATIONS) {
+            factor *= 0.5;  // the answer has not changed for a while, an easy position
+        }
+        return Math.min(softLimit * factor, hardLimit);
+    }
+
+}
@@ -1,89 +1,238 @@
 package games.chess;
 
-import java.util.HashMap;
-
 /**
- * Transposition table that stores previous states
+ * Transposition table of fixed size, kept for the whole game and shared between search threads. Entries are keyed
+ * by the Zobrist key of the board state and packed into one long[]: each entry is two longs, the key and a data
+ * word holding the best move, value, draft, bound and age, and entries are grouped into buckets of BUCKET_SIZE
+ * that fill 64 bytes, so a probe reads one bucket and nothing else.
+ *
+ * Threads read and write the table without locks. The first long of an entry is the key XORed with the data word,
+ * so a probe that reads the two longs of different writes (or half of a long, which the JVM may write in two
+ * halves) rebuilds the wrong key and treats the entry as missing. A racing write can lose an entry, which costs
+ * a little search, but can never return one state's data for another.
+ *
+ * Entries record their draft, the number of plies that were still to be searched below the state, so an entry
+ * stays meaningful in later searches that reach the state at a different distance from the root. When a bucket
+ * is full, a new entry replaces the one with the least draft, counting each search since an entry was stored
+ * as AGE_PENALTY plies less
  */
 public class TranspositionTable {
 
+    public static final int DEFAULT_MEGABYTES = 16;
+
+    public static final int LOWER_BOUND = 1;  // the value is at least the stored one (a beta cutoff)
+    public static final int UPPER_BOUND = 2;  // the value is at most the stored one (an alpha cutoff)
+    public static final int EXACT = 3;
+
+    private static final int BUCKET_SIZE = 4;  // entries per bucket; 4 entries of 2 longs are 64 bytes
+    private static final int ENTRY_LONGS = 2;
+    private static final int AGE_PENALTY = 4;  // plies of draft an entry is worth less for each search since it was stored
+    private static final long MAX_BUCKETS = 1L << 27;  // the most that fit in one array
+
+    // layout of the data word; a stored data word is never 0, since the bound is never 0
+    private static final int MOVE_BITS = 16;
+    private static final int VALUE_SHIFT = 16;
+    private static final int DRAFT_SHIFT = 48;
+    private static final int BOUND_SHIFT = 56;
+    private static final int AGE_SHIFT = 58;
+    private static final int AGE_MASK = 0x3f;
+    private static final int DRAFT_OFFSET = 128;  // quiescence drafts are negative
+    private static final String PROMOTIONS = " qrbn";
+
+    private long[] entries;  // key, data, key, data, ...
+    private int bucketMask;  // bucket count - 1
+    private volatile int age;  // number of the current search, modulo 64
+
     /**
-     * Subclass that handles data related to a specific board state
+     * Constructor for a TranspositionTable of the default size
      */
-    static class TableEntry {
-
-        private int depth;
-        private Integer value;
-        private String bestMove;
-
-        /**
-         * Constructor for a TableEntry in a TranspositionTable
-         * @see TranspositionTable
-         * @param depth the depth in the game tree the board state was observed at
-         * @param value the h-value returned from pruning the game tree
-         * @param bestMove the current best action for this state
-         */
-        public TableEntry(int depth, Integer value, String bestMove) {
-            this.depth = depth;
-            this.value = value;
-            this.bestMove = bestMove;
-        }
+    public TranspositionTable() {
+        this(DEFAULT_MEGABYTES);
     }
 
-    HashMap<String, TableEntry> table;  // maps board state --> TableEntry
+    /**
+     * Constructor for a TranspositionTable using at most the given memory
+     * @param megabytes the memory budget; the bucket count is the largest power of two that fits
+     */
+    public TranspositionTable(int megabytes) {
+        long bytes = Math.max(1, megabytes) * 1024L * 1024L;
+        long buckets = Long.highestOneBit(bytes / (BUCKET_SIZE * ENTRY_LONGS * 8));
+        buckets = Math.max(1, Math.min(buckets, MAX_BUCKETS));
+        entries = new long[(int)buckets * BUCKET_SIZE * ENTRY_LONGS];
+        bucketMask = (int)buckets - 1;
+    }
 
     /**
-     * Constructor for a TranspositionTable, initializes HashMap
+     * Start a new search: entries stored from now on belong to it, and older entries become cheaper to replace
      */
-    public TranspositionTable() {
-        table = new HashMap<>();
+    public void newSearch() {
+        age = (age + 1) & AGE_MASK;
     }
 
     /**
-     * Determine whether a board state exists in the transposition table
-     * @param boardState the board state from {@code ChessBoard.toString()}
-     * @return true if the table contains this state, false if not
+     * Look up a board state
+     * @param key the Zobrist key of the board state and side to move
+     * @return the entry's data word, to read with draft(), value(), bound() and bestMove(), or 0 if there is none
      */
-    public boolean hasEntry(String boardState) {
-        return table.containsKey(boardState);
+    public long probe(long key) {
+        int start = bucketIndex(key) * BUCKET_SIZE * ENTRY_LONGS;
+        for(int i = start; i < start + BUCKET_SIZE * ENTRY_LONGS; i += ENTRY_LONGS) {
+            long data = entries[i + 1];
+            if(data != 0 && (entries[i] ^ data) == key) {
+                return data;  // the key and data were written together
+            }
+        }
+        return 0;
     }
 
     /**
-     * Adds or updates the TableEntry for a board state
-     * @param boardState the board state to update the TableEntry
-     * @param depth the depth in the game tree the board state was observed at
+     * Adds or updates the entry for a board state. An entry of the current search with a greater draft is kept,
+     * as is an exact one with the same draft when the new value is only a bound
+     * @param key the Zobrist key of the board state and side to move
+     * @param draft the number of plies searched below the board state
      * @param value the h-value returned from pruning the game tree
-     * @param bestMove the current best action for this state
+     * @param bound LOWER_BOUND, UPPER_BOUND or EXACT
+     * @param bestMove the best action found for this state, or null
+     */
+    public void putEntry(long key, int draft, int value, int bound, String bestMove) {
+        int currentAge = age;
+        long data = pack(draft, value, bound, bestMove, currentAge);
+        int start = bucketIndex(key) * BUCKET_SIZE * ENTRY_LONGS;
+        int replace = start;
+        int replaceWorth = Integer.MAX_VALUE;
+        for(int i = start; i < start + BUCKET_SIZE * ENTRY_LONGS; i += ENTRY_LONGS) {
+            long stored = entries[i + 1];
+            if(stored == 0) {
+                if(replaceWorth > Integer.MIN_VALUE) {
+                    replace = i;  // an empty slot, unless the state itself is found further on
+                    replaceWorth = Integer.MIN_VALUE;
+                }
+                continue;
+            }
+            if((entries[i] ^ stored) == key) {
+                if(age(stored) == currentAge && (draft(stored) > draft
+                        || draft(stored) == draft && bound(stored) == EXACT && bound != EXACT)) {
+                    return;  // a deeper result from this search, or an exact one as deep, is worth more
+                }
+                if(bestMove == null) {
+                    data |= stored & ((1 << MOVE_BITS) - 1);  // a bound without a move keeps the move found before
+                }
+                replace = i;
+                break;
+            }
+            int worth = draft(stored) - AGE_PENALTY * ((currentAge - age(stored)) & AGE_MASK);
+            if(worth < replaceWorth) {
+                replace = i;
+                replaceWorth = worth;
+            }
+        }
+        entries[replace] = key ^ data;
+        entries[replace + 1] = data;
+    }
+
+    /**
+     * Get the draft from a data word
+     * @param entry a data word returned by probe()
+     * @return the number of plies that were searched below the state
      */
-    public void putEntry(String boardState, int depth, Integer value, String bestMove) {
-        table.put(boardState, new TableEntry(depth, value, bestMove));
+    public static int draft(long entry) {
+        return (int)(entry >>> DRAFT_SHIFT & 0xff) - DRAFT_OFFSET;
     }
 
     /**
-     * Get the stored depth for the given board state
-     * @param boardState the board state from {@code ChessBoard.toString()}
-     * @return the depth this state was encountered at in the game tree
+     * Get the value from a data word
+     * @param entry a data word returned by probe()
+     * @return the h-value associated with the state
      */
-    public int getDepth(String boardState) {
-        return table.get(boardState).depth;
+    public static int value(long entry) {
+        return (int)(entry >>> VALUE_SHIFT);
     }
 
     /**
-     * Get the stored value for the given board state
-     * @param boardState the board state from {@code ChessBoard.toString()}
-     * @return the h-value associated with this state
+     * Get the bound type from a data word
+     * @param entry a data word returned by probe()
+     * @return LOWER_BOUND, UPPER_BOUND or EXACT
      */
-    public Integer getValue(String boardState) {
-        return table.get(boardState).value;
+    public static int bound(long entry) {
+        return (int)(entry >>> BOUND_SHIFT & 3);
+    }
+
+    /**
+     * Get the best move from a data word
+     * @param entry a data word returned by probe()
+     * @return the best move to make at the state in UCI notation, or null if none was stored
+     */
+    public static String bestMove(long entry) {
+        int move = (int)(entry & ((1 << MOVE_BITS) - 1));
+        if(move == 0) {
+            return null;
+        }
+        int from = move & 0x3f;
+        int to = move >>> 6 & 0x3f;
+        int promotion = move >>> 12 & 7;
+        String uci = "" + (char)('a' + from % 8) + (from / 8 + 1) + (char)('a' + to % 8) + (to / 8 + 1);
+        return promotion == 0 ? uci : uci + PROMOTIONS.charAt(promotion);
     }
 
     /**
-     * Get the stored best move to make from the given board state
-     * @param boardState the board state from {@code ChessBoard.toString()}
-     * @return the best move to make at this state, in UCI notation
+     * Getter for the number of stored entries, counted by scanning the table
+     * @return number of board states in the table
      */
-    public String getBestMove(String boardState) {
-        return table.get(boardState).bestMove;
+    public int size() {
+        int count = 0;
+        for(int i = 1; i < entries.length; i += ENTRY_LONGS) {
+            if(entries[i] != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Getter for the number of entries the table can hold
+     * @return the capacity
+     */
+    public int capacity() {
+        return entries.length / ENTRY_LONGS;
+    }
+
+    /**
+     * Choose a key's bucket from its high bits, which the low bits of the key do not predict
+     */
+    private int bucketIndex(long key) {
+        return (int)(key >>> 32) & bucketMask;
+    }
+
+    /**
+     * Get the age from a data word
+     */
+    private static int age(long entry) {
+        return (int)(entry >>> AGE_SHIFT) & AGE_MASK;
+    }
+
+    /**
+     * Pack an entry's fields into a data word
+     */
+    private static long pack(int draft, int value, int bound, String bestMove, int age) {
+        int clampedDraft = Math.max(-DRAFT_OFFSET, Math.min(DRAFT_OFFSET - 1, draft));
+        return encodeMove(bestMove)
+                | ((long)value & 0xffffffffL) << VALUE_SHIFT
+                | (long)(clampedDraft + DRAFT_OFFSET) << DRAFT_SHIFT
+                | (long)bound << BOUND_SHIFT
+                | (long)age << AGE_SHIFT;
+    }
+
+    /**
+     * Encode a move in 16 bits: origin tile, destination tile (0-63 each) and promotion piece
+     */
+    private static long encodeMove(String move) {
+        if(move == null) {
+            return 0;
+        }
+        int from = (move.charAt(1) - '1') * 8 + (move.charAt(0) - 'a');
+        int to = (move.charAt(3) - '1') * 8 + (move.charAt(2) - 'a');
+        int promotion = move.length() > 4 ? PROMOTIONS.indexOf(move.charAt(4)) : 0;
+        return from | to << 6 | promotion << 12;
     }
 
 }
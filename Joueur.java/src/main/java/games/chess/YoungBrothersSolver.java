@@ -0,0 +1,383 @@
+package games.chess;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ChessSolver that implements Time-Limited Iterative-Deepening Depth-Limited Minimax with Alpha-Beta Pruning,
+ * searched in parallel by the Young Brothers Wait Concept: at every node the eldest child is searched first,
+ * then the remaining siblings become ForkJoinPool tasks. Siblings share the node's alpha (or beta) bound as it
+ * improves, and are abandoned as soon as one of them causes a cutoff.
+ *
+ * Move ordering is static and no tables are shared between tasks, so every completed depth returns the same
+ * move and value whatever order the tasks happen to run in. Each task carries its own copy of the positions on its
+ * line, so repetitions and the fifty-move rule are scored as draws without the tasks sharing a stack
+ */
+public class YoungBrothersSolver extends ChessSolver {
+
+    private static final int MIN_SPLIT_DEPTH = 2;  // nodes with less depth remaining search all children sequentially
+
+    private TimeManager timeManager;  // decides how long the turn may take
+    private int threadCount;  // parallelism of the ForkJoinPool
+    private Heuristic heuristic;  // evaluates boards at the cutoff
+    private HistoryTable historyTable;  // never updated, so move ordering stays the same in every task
+    private KillerTable killerTable;  // never updated, so move ordering stays the same in every task
+    private SearchControl searchControl;  // shared by every task; its node count is approximate across threads
+    private ArrayList<String> allowedRootMoves;  // the only moves searched at the root, or null for every legal move
+    private KeyStack positionHistory;  // keys of the game's positions, ending with the current board
+    private int maxDepthLimit;  // deepest depth limit iterative deepening may reach, or 0 for no fixed depth
+    private long nodeLimit = Long.MAX_VALUE;  // nodes after which the search stops
+    private AtomicLong nodes = new AtomicLong();  // nodes visited by every task, counted only under a node limit
+
+    /**
+     * Constructor for YoungBrothersSolver
+     * @param chessBoard current state of the ChessBoard
+     * @param currentPlayer the current player's color
+     * @param timeManager decides how long the turn may take
+     * @param threadCount number of worker threads in the ForkJoinPool
+     */
+    public YoungBrothersSolver(ChessBoard chessBoard, Color currentPlayer, TimeManager timeManager, int threadCount) {
+        super(chessBoard, currentPlayer);
+        this.timeManager = timeManager;
+        this.searchControl = new SearchControl(timeManager);
+        this.threadCount = Math.max(1, threadCount);
+        this.heuristic = new MaterialHeuristic(currentPlayer);
+        this.historyTable = new HistoryTable();
+        this.killerTable = new KillerTable();
+        this.positionHistory = new KeyStack();
+        this.positionHistory.reset(Zobrist.key(chessBoard, currentPlayer), 0);  // no history until setPositionHistory
+    }
+
+    /**
+     * Runs iterative deepening on a ForkJoinPool, keeping the result of the deepest depth that completed in time
+     * @return string in UCI notation for the minimax move
+     */
+    @Override
+    public String computeBestMove() {
+        timeManager.start();
+
+        ArrayList<String> possibleMoves = chessBoard.findAllMoves(currentPlayer);
+        if(allowedRootMoves != null) {
+            possibleMoves.retainAll(allowedRootMoves);
+        }
+        if(possibleMoves.size() == 1) {
+            return possibleMoves.get(0);  // nothing to decide
+        }
+
+        String action = null;
+        int maxDepth = maxDepthLimit > 0 ? maxDepthLimit : INFINITY;
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try {
+            for(int depth = 1; depth <= maxDepth; depth++) {
+                if(action != null && searchControl.isTimed() && !timeManager.shouldStartIteration()) {
+                    break;  // the next depth is not expected to finish within the soft limit
+                }
+                double iterationStart = System.nanoTime();
+                SearchTask root = new SearchTask(null, chessBoard, new KeyStack(positionHistory), true, 0, depth, 0);
+                pool.invoke(root);
+                if(searchControl.isStopped()) {
+                    break;  // the interrupted depth is incomplete, keep the previous result
+                }
+                action = root.bestMove;
+                timeManager.iterationCompleted(action, root.bestValue, System.nanoTime() - iterationStart);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if(action == null) {  // not even depth 1 finished
+            RandomSolver randomSolver = new RandomSolver(chessBoard, currentPlayer);
+            action = randomSolver.computeBestMove();
+        }
+        return action;
+    }
+
+    /**
+     * Restrict the moves searched at the root, e.g. to those a tablebase found best
+     * @param allowedRootMoves legal moves in UCI notation, or null to search every legal move
+     */
+    public void setRootMoves(ArrayList<String> allowedRootMoves) {
+        this.allowedRootMoves = allowedRootMoves;
+    }
+
+    /**
+     * Set the positions of the game so far, so that lines repeating them or reaching the fifty-move limit score
+     * as draws. The solver searches on copies, so the game's history is never changed
+     * @param positionHistory keys of the positions played, ending with the current board
+     */
+    public void setPositionHistory(KeyStack positionHistory) {
+        this.positionHistory = new KeyStack(positionHistory);
+    }
+
+    /**
+     * Search to a fixed depth limit, ignoring the clock
+     * @param depthLimit the deepest depth limit to complete, or 0 to search until the time or node limit
+     */
+    public void setDepthLimit(int depthLimit) {
+        this.maxDepthLimit = Math.max(0, depthLimit);
+        searchControl.setTimed(maxDepthLimit == 0 && nodeLimit == Long.MAX_VALUE);
+    }
+
+    /**
+     * Stop the search after a fixed number of nodes, ignoring the clock; the move comes from the deepest depth
+     * completed within the nodes. The count is exact, but which nodes the tasks visit within it depends on how
+     * the threads are scheduled
+     * @param nodeLimit the number of nodes, or 0 for no limit
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit > 0 ? nodeLimit : Long.MAX_VALUE;
+        searchControl.setTimed(maxDepthLimit == 0 && this.nodeLimit == Long.MAX_VALUE);
+    }
+
+    /**
+     * Abandon the search from another thread; computeBestMove() returns the deepest completed depth
+     */
+    public void stop() {
+        searchControl.stop();
+    }
+
+    /**
+     * Determines whether the search should stop at a board
+     * @param chessBoard the current state of the ChessBoard
+     * @param depth the current depth of the game tree
+     * @param depthLimit the current maximum depth for iterative deepening
+     * @return true if in a terminal state or at the depth limit, false otherwise
+     */
+    private boolean cutoff(ChessBoard chessBoard, int depth, int depthLimit) {
+        return depth >= depthLimit || terminal(chessBoard);
+    }
+
+    /**
+     * A fail-hard alpha-beta search of one node. The node reads its window from its parent when it starts,
+     * so it benefits from bounds that siblings found while it was waiting to run
+     */
+    private class SearchTask extends RecursiveTask<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SearchTask parent;  // null at the root
+        private final ChessBoard chessBoard;
+        private final KeyStack positions;  // the game's positions followed by this task's line, owned by this task
+        private final boolean maximizing;  // true where the current player moves
+        private final int depth;
+        private final int depthLimit;
+        private final int index;  // position of this node among its siblings in the move order
+        private AtomicInteger bound;  // alpha of a MAX node or beta of a MIN node, shared with the children
+        private volatile boolean cut;  // set once the bound crosses the other end of the window
+        private int alpha;
+        private int beta;
+        private ArrayList<String> rootMoves;  // only recorded at the root
+        private String bestMove;  // only recorded at the root
+        private int bestIndex = -1;
+        private int bestValue = -INFINITY;
+
+        /**
+         * Constructor for a SearchTask
+         * @param parent the task searching the parent node, or null for the root
+         * @param chessBoard the board at this node
+         * @param positions the positions up to and including this node, not shared with any other task
+         * @param maximizing true if the current player moves at this node
+         * @param depth the current depth of the game tree
+         * @param depthLimit the depth limit of this iteration
+         * @param index position of this node among its siblings in the move order
+         */
+        SearchTask(SearchTask parent, ChessBoard chessBoard, KeyStack positions, boolean maximizing, int depth, int depthLimit, int index) {
+            this.parent = parent;
+            this.chessBoard = chessBoard;
+            this.positions = positions;
+            this.maximizing = maximizing;
+            this.depth = depth;
+            this.depthLimit = depthLimit;
+            this.index = index;
+        }
+
+        /**
+         * Search this node and report its value to the parent
+         * @return the fail-hard value of the node within its window
+         */
+        @Override
+        protected Integer compute() {
+            readWindow();
+            if(abandoned()) {
+                return maximizing ? alpha : beta;  // the result is discarded by an ancestor
+            }
+            if(nodeLimit != Long.MAX_VALUE && nodes.incrementAndGet() >= nodeLimit) {  // unlimited searches skip the shared counter
+                searchControl.stop();  // the node limit is used up
+            }
+            if(searchControl.shouldStop()) {
+                return maximizing ? alpha : beta;
+            }
+            int value = search();
+            if(parent != null) {
+                parent.report(index, value);  // share the result with siblings that are still running
+            }
+            return value;
+        }
+
+        /**
+         * Search the children of this node, eldest first
+         * @return the fail-hard value of the node within its window
+         */
+        private int search() {
+            if(depth > 0 && positions.isDraw(depth)) {
+                return clamp(0);  // repeated, or fifty moves without a capture or pawn move
+            }
+            if(cutoff(chessBoard, depth, depthLimit)) {
+                return clamp(heuristic.h(chessBoard));
+            }
+
+            Color mover = maximizing ? currentPlayer : opponent(currentPlayer);
+            ArrayList<String> legalMoves = chessBoard.findAllMoves(mover);
+            if(parent == null && allowedRootMoves != null) {
+                legalMoves.retainAll(allowedRootMoves);
+            }
+            ArrayList<String> moves = orderedMoves(legalMoves);
+            if(moves.isEmpty()) {
+                return clamp(heuristic.h(chessBoard));  // stalemate
+            }
+
+            bound = new AtomicInteger(maximizing ? alpha : beta);
+
+            // the eldest brother is searched alone, to establish a bound before any work is split
+            child(moves, 0).compute();
+
+            if(!cut && !searchControl.isStopped() && moves.size() > 1) {
+                List<SearchTask> youngerBrothers = new ArrayList<>();
+                for(int i = 1; i < moves.size(); i++) {
+                    youngerBrothers.add(child(moves, i));
+                }
+
+                if(depthLimit - depth >= MIN_SPLIT_DEPTH) {
+                    invokeAll(youngerBrothers);  // younger brothers run in parallel once the eldest is done
+                } else {
+                    for(int i = 0; i < youngerBrothers.size() && !cut && !searchControl.isStopped(); i++) {
+                        youngerBrothers.get(i).compute();
+                    }
+                }
+            }
+
+            if(cut) {
+                return maximizing ? beta : alpha;
+            }
+            return bound.get();
+        }
+
+        /**
+         * Take the search window from the parent's current bound. At the root's children the window is widened
+         * by one so that moves equal to the best so far get exact values, keeping the choice of move deterministic
+         */
+        private void readWindow() {
+            if(parent == null) {
+                alpha = -INFINITY;
+                beta = INFINITY;
+            } else if(parent.maximizing) {
+                alpha = parent.bound.get() - (parent.parent == null ? 1 : 0);
+                beta = parent.beta;
+            } else {
+                alpha = parent.alpha;
+                beta = parent.bound.get();
+            }
+        }
+
+        /**
+         * Create the task for the child reached by a move
+         * @param moves this node's moves in search order
+         * @param index position of the move to make
+         */
+        private SearchTask child(ArrayList<String> moves, int index) {
+            String move = moves.get(index);
+            ChessBoard childBoard = result(chessBoard, move);
+            KeyStack childPositions = new KeyStack(positions);  // the child may run on another thread
+            Color childMover = maximizing ? opponent(currentPlayer) : currentPlayer;
+            childPositions.push(Zobrist.key(childBoard, childMover), MoveList.isZeroing(chessBoard, move));
+            return new SearchTask(this, childBoard, childPositions, !maximizing, depth + 1, depthLimit, index);
+        }
+
+        /**
+         * Fold a child's value into this node's bound, flagging a cutoff once the window closes. Values from
+         * abandoned or timed out searches are never folded in
+         * @param index the child's position in the move order
+         * @param value the child's fail-hard value
+         */
+        private void report(int index, int value) {
+            if(searchControl.isStopped() || abandoned()) {
+                return;
+            }
+            if(maximizing) {
+                int previous = bound.get();
+                while(value > previous && !bound.compareAndSet(previous, value)) {
+                    previous = bound.get();
+                }
+                if(parent == null) {
+                    recordRootMove(index, value);
+                }
+                if(bound.get() >= beta) {
+                    cut = true;
+                }
+            } else {
+                int previous = bound.get();
+                while(value < previous && !bound.compareAndSet(previous, value)) {
+                    previous = bound.get();
+                }
+                if(bound.get() <= alpha) {
+                    cut = true;
+                }
+            }
+        }
+
+        /**
+         * Keep the root move with the highest value, preferring the earliest move in the order on ties
+         * @param index position of the move in the root's move order
+         * @param value the value the move achieved
+         */
+        private synchronized void recordRootMove(int index, int value) {
+            if(value > bestValue || (value == bestValue && index < bestIndex)) {
+                bestValue = value;
+                bestIndex = index;
+                bestMove = rootMoves.get(index);
+            }
+        }
+
+        /**
+         * Put moves in the static search order
+         * @param moves the generated moves
+         * @return the same moves, best-first
+         */
+        private ArrayList<String> orderedMoves(ArrayList<String> moves) {
+            ArrayList<String> ordered = new ArrayList<>();
+            MoveList moveList = new MoveList(chessBoard, moves, null, depth, killerTable, historyTable);
+            while(moveList.hasNext()) {
+                ordered.add(moveList.next());
+            }
+            if(parent == null) {
+                rootMoves = ordered;
+            }
+            return ordered;
+        }
+
+        /**
+         * Determine whether any ancestor has already been cut off, making this search useless
+         * @return true if the result of this task will be discarded
+         */
+        private boolean abandoned() {
+            for(SearchTask node = parent; node != null; node = node.parent) {
+                if(node.cut) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Clamp a value into this node's window, as a fail-hard search does
+         */
+        private int clamp(int value) {
+            return Math.max(alpha, Math.min(beta, value));
+        }
+    }
+
+}
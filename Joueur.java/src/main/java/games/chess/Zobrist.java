@@ -0,0 +1,184 @@
+package games.chess;
+
+import games.chess.pieces.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Zobrist hashing of board states with the Polyglot layout: 768 randoms for piece kinds on tiles, 4 for castling
+ * rights, 8 for en passant files and 1 for white to move, XORed together into a 64-bit key.
+ *
+ * The randoms come from a fixed seed, so keys are stable between runs. Polyglot books are keyed with the published
+ * Random64 table instead; loading that table with loadRandoms() makes keys match any Polyglot book. The table is
+ * accepted as it is published, a listing of 781 hexadecimal constants such as the Random64 array in Polyglot's
+ * random.cpp or the book format description, or as 781 big-endian longs, and is checked against the key Polyglot
+ * gives the starting position
+ */
+public class Zobrist {
+
+    public static final int RANDOM_COUNT = 781;
+
+    private static final int CASTLE_OFFSET = 768;  // white kingside, white queenside, black kingside, black queenside
+    private static final int EN_PASSANT_OFFSET = 772;
+    private static final int TURN_OFFSET = 780;
+    private static final long SEED = 0x5a0b81574c2a3e1fL;
+    private static final long POLYGLOT_START_KEY = 0x463b96181691fc9cL;  // published key of the starting position
+    private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    private static final Pattern HEX_CONSTANT = Pattern.compile("(?<![0-9A-Fa-fXx])(?:0[xX])?([0-9A-Fa-f]{16})(?![0-9A-Fa-f])");
+
+    // replaced only by loadRandoms, which must run before any key is computed, since keys made with different
+    // randoms never match; volatile so that search threads started later see the replacement
+    private static volatile long[] randoms = seededRandoms();
+
+    /**
+     * Replace the randoms with Polyglot's Random64 table read from a file. Call it at startup, before any key is
+     * computed, as keys computed earlier would not match any computed afterwards
+     * @param path file holding the table, either as text listing RANDOM_COUNT 16-digit hexadecimal constants in order
+     *             (a "0x" prefix and C suffixes such as "ULL" are allowed) or as RANDOM_COUNT big-endian 64-bit values
+     * @throws IOException if the file cannot be read or does not hold the Random64 table
+     */
+    public static void loadRandoms(String path) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(path));
+        long[] loaded = new long[RANDOM_COUNT];
+        if(bytes.length == RANDOM_COUNT * 8) {
+            ByteBuffer.wrap(bytes).asLongBuffer().get(loaded);
+        } else {
+            Matcher matcher = HEX_CONSTANT.matcher(new String(bytes, StandardCharsets.ISO_8859_1));
+            int count = 0;
+            while(matcher.find()) {
+                if(count == RANDOM_COUNT) {
+                    throw new IOException("more than " + RANDOM_COUNT + " constants");
+                }
+                String hex = matcher.group(1);
+                loaded[count++] = Long.parseLong(hex.substring(0, 8), 16) << 32 | Long.parseLong(hex.substring(8), 16);
+            }
+            if(count != RANDOM_COUNT) {
+                throw new IOException("found " + count + " of " + RANDOM_COUNT + " constants");
+            }
+        }
+        if(key(new ChessBoard(START_FEN), Color.WHITE, loaded) != POLYGLOT_START_KEY) {
+            throw new IOException("not Polyglot's Random64 table: the starting position key does not match");
+        }
+        randoms = loaded;
+    }
+
+    /**
+     * Compute the key of a board state from scratch
+     * @param chessBoard the board
+     * @param sideToMove the color of the player to move
+     * @return the 64-bit Zobrist key
+     */
+    public static long key(ChessBoard chessBoard, Color sideToMove) {
+        return key(chessBoard, sideToMove, randoms);
+    }
+
+    /**
+     * Compute the key of a board state from scratch with a given table of randoms
+     */
+    private static long key(ChessBoard chessBoard, Color sideToMove, long[] randoms) {
+        long key = 0;
+        for(int row = 1; row <= 8; row++) {
+            for(char col = 'a'; col <= 'h'; col++) {
+                ChessPiece piece = chessBoard.at(row, col);
+                if(piece != null) {
+                    key ^= randoms[64 * pieceKind(piece) + 8 * (row - 1) + (col - 'a')];
+                }
+            }
+        }
+
+        char[] rookCols = {'h', 'a'};
+        Color[] colors = {Color.WHITE, Color.BLACK};
+        for(int i = 0; i < 4; i++) {  // in Polyglot order: white kingside, white queenside, black kingside, black queenside
+            if(canCastle(chessBoard, colors[i / 2], rookCols[i % 2])) {
+                key ^= randoms[CASTLE_OFFSET + i];
+            }
+        }
+
+        // en passant is not supported by ChessBoard, so EN_PASSANT_OFFSET randoms never apply
+
+        if(sideToMove == Color.WHITE) {
+            key ^= randoms[TURN_OFFSET];
+        }
+        return key;
+    }
+
+    /**
+     * Random for a piece standing on a tile
+     * @param piece the piece
+     * @param row the row of the tile, 1-8
+     * @param col the column of the tile, a-h
+     * @return the random XORed into the key for this piece on this tile
+     */
+    public static long pieceRandom(ChessPiece piece, int row, char col) {
+        return randoms[64 * pieceKind(piece) + 8 * (row - 1) + (col - 'a')];
+    }
+
+    /**
+     * Random for a piece kind standing on a tile, for callers that track pieces by kind
+     * @param kind the piece kind, as returned by pieceKind()
+     * @param tile the tile, (row - 1) * 8 + column
+     * @return the random XORed into the key for this kind on this tile
+     */
+    public static long random(int kind, int tile) {
+        return randoms[64 * kind + tile];
+    }
+
+    /**
+     * Polyglot's index of a piece kind: black pawn 0, white pawn 1, black knight 2, ... white king 11
+     * @param piece the piece
+     * @return the kind index, 0-11
+     */
+    public static int pieceKind(ChessPiece piece) {
+        int kind;
+        if(piece instanceof Pawn) {
+            kind = 0;
+        } else if(piece instanceof Knight) {
+            kind = 1;
+        } else if(piece instanceof Bishop) {
+            kind = 2;
+        } else if(piece instanceof Rook) {
+            kind = 3;
+        } else if(piece instanceof Queen) {
+            kind = 4;
+        } else {
+            kind = 5;
+        }
+        return 2 * kind + (piece.getColor() == Color.WHITE ? 1 : 0);
+    }
+
+    /**
+     * Determine whether a player still has a castling right, i.e. neither the king nor that rook has moved
+     * @param chessBoard the board
+     * @param color the player's color
+     * @param rookCol the rook's starting column, 'h' for kingside or 'a' for queenside
+     * @return true if the right remains
+     */
+    private static boolean canCastle(ChessBoard chessBoard, Color color, char rookCol) {
+        int row = color == Color.WHITE ? 1 : 8;
+        ChessPiece king = chessBoard.at(row, 'e');
+        ChessPiece rook = chessBoard.at(row, rookCol);
+        return king instanceof King && king.getColor() == color && !king.moved
+                && rook instanceof Rook && rook.getColor() == color && !rook.moved;
+    }
+
+    /**
+     * Generate the default randoms from a fixed seed
+     * @return RANDOM_COUNT pseudo-random 64-bit values
+     */
+    private static long[] seededRandoms() {
+        Random random = new Random(SEED);
+        long[] values = new long[RANDOM_COUNT];
+        for(int i = 0; i < RANDOM_COUNT; i++) {
+            values[i] = random.nextLong();
+        }
+        return values;
+    }
+
+}